@@ -0,0 +1,75 @@
+/**
+ * Encodings of the constraint "at most one of these literals is true".
+ * PAIRWISE forbids every pair and needs no auxiliary atoms, but it takes n(n-1)/2 clauses.
+ * The other encodings take a linear number of clauses with auxiliary atoms:
+ * SEQUENTIAL uses a running "one seen so far" atom per literal (Sinz), COMMANDER splits the literals into
+ * groups of three under a commander atom and constrains the commanders recursively (Klieber and Kwon),
+ * and BINARY gives each literal its own bit pattern over log2(n) atoms (Frisch).
+ */
+public enum AtMostOne {
+    PAIRWISE, SEQUENTIAL, COMMANDER, BINARY;
+
+    private static final int GROUP_SIZE = 3;
+
+    /**
+     * Source of fresh auxiliary atoms.
+     */
+    public interface Atoms {
+        int newAtom(String symbol);
+    }
+
+    /*
+     * Adds clauses to sink saying that at most one of lits is true. Auxiliary atoms come from atoms and are
+     * named Aux(label,k), the label should tell constraints apart, e.g. Jump,3 for the jumps at timepoint 3.
+     */
+    public void encode(int[] lits, String label, ClauseSink sink, Atoms atoms) {
+        encode(lits, label, sink, atoms, new int[]{0});
+    }
+
+    private void encode(int[] lits, String label, ClauseSink sink, Atoms atoms, int[] counter) {
+        int n = lits.length;
+        if (n <= 1) return;
+        if (this == PAIRWISE || n <= GROUP_SIZE) {
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) clause(sink, -lits[i], -lits[j]);
+            }
+        } else if (this == SEQUENTIAL) {
+            // s[i] is true when one of lits[0..i] is true.
+            int previous = 0;
+            for (int i = 0; i < n; i++) {
+                if (i > 0) clause(sink, -lits[i], -previous);
+                if (i == n - 1) break;
+                int s = atoms.newAtom(aux(label, counter));
+                clause(sink, -lits[i], s);
+                if (i > 0) clause(sink, -previous, s);
+                previous = s;
+            }
+        } else if (this == COMMANDER) {
+            int[] commanders = new int[(n + GROUP_SIZE - 1) / GROUP_SIZE];
+            for (int g = 0; g < commanders.length; g++) {
+                commanders[g] = atoms.newAtom(aux(label, counter));
+                int end = Math.min(n, (g + 1) * GROUP_SIZE);
+                for (int i = g * GROUP_SIZE; i < end; i++) {
+                    clause(sink, -lits[i], commanders[g]);
+                    for (int j = i + 1; j < end; j++) clause(sink, -lits[i], -lits[j]);
+                }
+            }
+            encode(commanders, label, sink, atoms, counter);
+        } else {
+            int numBits = 32 - Integer.numberOfLeadingZeros(n - 1);
+            int[] bits = new int[numBits];
+            for (int b = 0; b < numBits; b++) bits[b] = atoms.newAtom(aux(label, counter));
+            for (int i = 0; i < n; i++) {
+                for (int b = 0; b < numBits; b++) clause(sink, -lits[i], (i >> b & 1) == 1 ? bits[b] : -bits[b]);
+            }
+        }
+    }
+
+    private static String aux(String label, int[] counter) {
+        return "Aux(" + label + "," + ++counter[0] + ")";
+    }
+
+    private static void clause(ClauseSink sink, int... lits) {
+        sink.addClause(lits, 0, lits.length);
+    }
+}
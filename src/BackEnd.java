@@ -4,18 +4,35 @@ import java.util.*;
 /**
  * Backend part of the peg solver.
  * The backend takes as input the the output of the DPLL program, and generates the path represented by the output.
+ * A backend can decode any number of outputs, but not from two threads at once.
  */
 public class BackEnd {
 
     private Map<String, Boolean> values = new HashMap<>();
     private Map<String, String> symbolTable = new HashMap<>();
     private int expectedNumSteps = -1;
+    private int[] holeMap;
+    private static final Comparator<String> BY_TIMEPOINT = new Comparator<String>() {
+        @Override
+        public int compare(String o1, String o2) {
+            String[] arr1 = o1.split(",");
+            String[] arr2 = o2.split(",");
+            String time1 = arr1[arr1.length - 1];
+            String time2 = arr2[arr2.length - 1];
+            time1 = time1.substring(0, time1.length() - 1);
+            time2 = time2.substring(0, time2.length() - 1);
+            return Integer.parseInt(time1) - Integer.parseInt(time2);
+        }
+    };
 
     public BackEnd() {
 
     }
 
     public void generatePath(String input) throws IOException {
+        values.clear();
+        symbolTable.clear();
+        expectedNumSteps = -1;
         File inputFile = new File(input);
         BufferedReader br = new BufferedReader(new FileReader(inputFile));
         String outputFile = input + "_Final_Path";
@@ -65,20 +82,8 @@ public class BackEnd {
                 path.add(symbolTable.get(k));
             }
         }
-        Comparator<String> myComparator = new Comparator<String>() {
-            @Override
-            public int compare(String o1, String o2) {
-                String[] arr1 = o1.split(",");
-                String[] arr2 = o2.split(",");
-                String time1 = arr1[arr1.length - 1];
-                String time2 = arr2[arr2.length - 1];
-                time1 = time1.substring(0, time1.length() - 1);
-                time2 = time2.substring(0, time2.length() - 1);
-                return Integer.parseInt(time1) - Integer.parseInt(time2);
-            }
-        };
         // Sort the path by the timepoint of each jump.
-        Collections.sort(path, myComparator);
+        Collections.sort(path, BY_TIMEPOINT);
         // Write the path to the output.
         // If the path generated can not be a real path, write "NO SOLUTION" and return.
         if (path.size() == 0 || path.size() != expectedNumSteps) {
@@ -91,4 +96,82 @@ public class BackEnd {
         }
         bw.close();
     }
+
+    /*
+     * Holes of decoded jumps are mapped through holeMap, indexed by hole, e.g. when the front end solved
+     * a symmetric image of the board. No mapping if null.
+     */
+    public void setHoleMap(int[] holeMap) {
+        this.holeMap = holeMap;
+    }
+
+    /*
+     * Decodes the last model of the solver in memory: the Jump atoms set to true, sorted by timepoint.
+     * symbols is indexed by atom.
+     */
+    public List<String> decodePath(List<String> symbols, DPLL solver) {
+        List<String> path = new ArrayList<>();
+        for (int atom = 1; atom < symbols.size(); atom++) {
+            String symbol = symbols.get(atom);
+            if (symbol != null && symbol.startsWith("J") && solver.modelValue(atom) == 1) {
+                path.add(holeMap == null ? symbol : mapHoles(symbol, holeMap));
+            }
+        }
+        Collections.sort(path, BY_TIMEPOINT);
+        return path;
+    }
+
+    /*
+     * Jump(A,B,C,I) with its three holes mapped through holeMap, indexed by hole.
+     */
+    static String mapHoles(String jump, int[] holeMap) {
+        String[] args = jump.substring(jump.indexOf('(') + 1, jump.length() - 1).split(",");
+        return "Jump(" + holeMap[Integer.parseInt(args[0])] + "," + holeMap[Integer.parseInt(args[1])] + ","
+                + holeMap[Integer.parseInt(args[2])] + "," + args[3] + ")";
+    }
+
+    /*
+     * Writes a decoded path to the output, or "NO SOLUTION" if path is null.
+     */
+    public void writePath(List<String> path, String output) throws IOException {
+        BufferedWriter bw = new BufferedWriter(new FileWriter(output));
+        if (path == null) {
+            bw.write("NO SOLUTION");
+        } else {
+            for (String s : path) {
+                bw.write(s);
+                bw.newLine();
+            }
+        }
+        bw.close();
+    }
+
+    /*
+     * In-memory counterpart of generatePath: decodes the last model of the solver for the fixed horizon
+     * encoding in cnf and writes the path, or "NO SOLUTION", to the output. Returns the path, null if
+     * there is none.
+     */
+    public List<String> generatePath(Cnf cnf, DPLL solver, boolean satisfied, String output) throws IOException {
+        List<String> path = null;
+        if (satisfied) {
+            path = decodePath(cnf.getSymbols(), solver);
+            // The horizon is the last timepoint of the Peg atoms, a real path jumps at every step before it.
+            int lastTimepoint = 0;
+            for (String symbol : cnf.getSymbols()) {
+                if (symbol != null && symbol.startsWith("P")) {
+                    lastTimepoint = Math.max(lastTimepoint, timepoint(symbol));
+                }
+            }
+            if (path.size() == 0 || path.size() != lastTimepoint - 1) path = null;
+        }
+        writePath(path, output);
+        return path;
+    }
+
+    /*
+     * Timepoint of a symbol, its last argument.
+     */
+    private static int timepoint(String symbol) {
+        return Integer.parseInt(symbol.substring(symbol.lastIndexOf(',') + 1, symbol.length() - 1));
+    }
 }
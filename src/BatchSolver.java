@@ -0,0 +1,395 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Batch mode of the peg solver.
+ * Solves many puzzles in one JVM, so JVM start-up and JIT warm-up are paid once instead of once per
+ * puzzle. The puzzles come from manifests, text files with one puzzle path per line (blank lines and
+ * lines starting with # are skipped, relative paths are relative to the manifest), or from directories,
+ * whose puzzle files are taken in name order.
+ *
+ * A fixed number of threads solve the puzzles in parallel. Only a few puzzles per thread are queued at
+ * a time, so a manifest of thousands of puzzles does not hold thousands of encodings in memory. Each
+ * result is written as one line as soon as its puzzle is done: the puzzle, SOLVED, NO_SOLUTION, TIMEOUT
+ * or ERROR, the time in milliseconds and the jumps of the path or the error, separated by tabs.
+ * A solve that takes longer than the time limit is stopped and reported as TIMEOUT.
+ *
+ * With a solution cache, a puzzle whose board and start hole, or a symmetric start hole, were solved
+ * before is answered from the cache. Its result line has the time of the lookup.
+ *
+ * The options are set before solving. After that solve may be called from any number of threads at
+ * once, every call encodes, solves and decodes with its own front end, DPLL program and back end.
+ * Usage: java BatchSolver [-threads n] [-timeout seconds] [-output file] [-cdcl] [-heuristic name]
+ * [-symmetry] [-prune] [-amo encoding] [-preprocess] [-cache file] [-cacheSize n] manifests or directories
+ */
+public class BatchSolver {
+    private static final int QUEUED_PER_THREAD = 2;
+
+    /**
+     * Outcome of one puzzle.
+     */
+    public enum Status {
+        SOLVED, NO_SOLUTION, TIMEOUT, ERROR
+    }
+
+    /**
+     * Result of one puzzle: its status, the time it took and the path if it was solved.
+     */
+    public static class Result {
+        private final String puzzle;
+        private final Status status;
+        private final long millis;
+        private final List<String> path;
+        private final String error;
+
+        Result(String puzzle, Status status, long millis, List<String> path, String error) {
+            this.puzzle = puzzle;
+            this.status = status;
+            this.millis = millis;
+            this.path = path;
+            this.error = error;
+        }
+
+        public String getPuzzle() {
+            return puzzle;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        /*
+         * Jumps of the solution ordered by timepoint, null unless the status is SOLVED.
+         */
+        public List<String> getPath() {
+            return path;
+        }
+
+        /*
+         * Message of the error, null unless the status is ERROR.
+         */
+        public String getError() {
+            return error;
+        }
+
+        /*
+         * The output line of the result, its fields separated by tabs.
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(puzzle).append('\t').append(status).append('\t').append(millis);
+            if (path != null) {
+                sb.append('\t');
+                for (int i = 0; i < path.size(); i++) {
+                    if (i > 0) sb.append(' ');
+                    sb.append(path.get(i));
+                }
+            } else if (error != null) {
+                sb.append('\t').append(error);
+            }
+            return sb.toString();
+        }
+    }
+
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private int timeoutSeconds;
+    private boolean cdcl;
+    private String heuristic;
+    private boolean symmetry;
+    private boolean prune;
+    private AtMostOne atMostOne = AtMostOne.PAIRWISE;
+    private boolean preprocess;
+    private SolutionCache cache;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "batch-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public BatchSolver() {
+
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        BatchSolver batch = new BatchSolver();
+        List<String> sources = new ArrayList<>();
+        String output = null;
+        String cacheFile = null;
+        int cacheSize = 0;
+        boolean badArgs = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-threads") && i + 1 < args.length) {
+                int threads = Integer.parseInt(args[++i]);
+                badArgs |= threads < 0;
+                batch.setThreads(threads);
+            } else if (arg.equals("-timeout") && i + 1 < args.length) {
+                batch.setTimeout(Integer.parseInt(args[++i]));
+            } else if (arg.equals("-output") && i + 1 < args.length) {
+                output = args[++i];
+            } else if (arg.equals("-cdcl")) {
+                batch.setCdcl(true);
+            } else if (arg.equals("-heuristic") && i + 1 < args.length) {
+                String heuristic = args[++i];
+                if (PegSolver.heuristic(heuristic) == null) {
+                    badArgs = true;
+                } else {
+                    batch.setHeuristic(heuristic);
+                }
+            } else if (arg.equals("-symmetry")) {
+                batch.setSymmetryBreaking(true);
+            } else if (arg.equals("-prune")) {
+                batch.setReachabilityPruning(true);
+            } else if (arg.equals("-amo") && i + 1 < args.length) {
+                AtMostOne atMostOne = PegSolver.atMostOne(args[++i]);
+                if (atMostOne == null) {
+                    badArgs = true;
+                } else {
+                    batch.setAtMostOne(atMostOne);
+                }
+            } else if (arg.equals("-preprocess")) {
+                batch.setPreprocess(true);
+            } else if (arg.equals("-cache") && i + 1 < args.length) {
+                cacheFile = args[++i];
+            } else if (arg.equals("-cacheSize") && i + 1 < args.length) {
+                cacheSize = Integer.parseInt(args[++i]);
+                badArgs |= cacheSize < 1;
+            } else if (!arg.startsWith("-")) {
+                sources.add(arg);
+            } else {
+                badArgs = true;
+            }
+        }
+        if (badArgs || sources.isEmpty()) {
+            System.out.println("Usage: java BatchSolver [-threads n] [-timeout seconds] [-output file] [-cdcl] [-heuristic vsids|jw|static] [-symmetry] [-prune] [-amo pairwise|sequential|commander|binary] [-preprocess] [-cache file] [-cacheSize n] manifests_or_directories");
+            System.exit(-1);
+        }
+        List<String> puzzles = new ArrayList<>();
+        for (String source : sources) puzzles.addAll(puzzles(source));
+        SolutionCache cache = null;
+        if (cacheFile != null) {
+            cache = new SolutionCache(cacheSize > 0 ? cacheSize : SolutionCache.DEFAULT_CAPACITY, cacheFile);
+        } else if (cacheSize > 0) {
+            cache = new SolutionCache(cacheSize);
+        }
+        batch.setCache(cache);
+        PrintStream out = output == null ? System.out : new PrintStream(new FileOutputStream(output), true);
+        int[] counts = new int[Status.values().length];
+        long started = System.nanoTime();
+        batch.solveAll(puzzles, result -> {
+            // Results arrive from the worker threads, one line and one count at a time.
+            synchronized (counts) {
+                out.println(result);
+                counts[result.getStatus().ordinal()]++;
+            }
+        });
+        if (out != System.out) out.close();
+        if (cache != null) cache.close();
+        System.err.println("c puzzles " + puzzles.size() + " solved " + counts[Status.SOLVED.ordinal()]
+                + " no solution " + counts[Status.NO_SOLUTION.ordinal()] + " timeout " + counts[Status.TIMEOUT.ordinal()]
+                + " error " + counts[Status.ERROR.ordinal()] + " in " + (System.nanoTime() - started) / 1000000 + " ms");
+    }
+
+    /*
+     * Number of puzzles solved at once by solveAll, 0 means one per available processor.
+     */
+    public void setThreads(int numThreads) {
+        this.numThreads = numThreads > 0 ? numThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /*
+     * Time limit of each puzzle in seconds, 0 for none. It runs from the moment a worker takes the
+     * puzzle up and covers encoding, preprocessing and solving.
+     */
+    public void setTimeout(int timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    public void setCdcl(boolean cdcl) {
+        this.cdcl = cdcl;
+    }
+
+    /*
+     * Decision heuristic by its -heuristic name, vsids, jw or static, null for the solver's default.
+     */
+    public void setHeuristic(String heuristic) {
+        if (heuristic != null && PegSolver.heuristic(heuristic) == null) {
+            throw new IllegalArgumentException("Unknown heuristic " + heuristic);
+        }
+        this.heuristic = heuristic;
+    }
+
+    public void setSymmetryBreaking(boolean symmetry) {
+        this.symmetry = symmetry;
+    }
+
+    public void setReachabilityPruning(boolean prune) {
+        this.prune = prune;
+    }
+
+    public void setAtMostOne(AtMostOne atMostOne) {
+        this.atMostOne = atMostOne;
+    }
+
+    public void setPreprocess(boolean preprocess) {
+        this.preprocess = preprocess;
+    }
+
+    /*
+     * Cache consulted before and filled after each solve, null for none.
+     */
+    public void setCache(SolutionCache cache) {
+        this.cache = cache;
+    }
+
+    /*
+     * Solves the puzzles on the configured number of threads and passes each result to sink as soon as
+     * it is known, so results arrive in the order the puzzles finish. sink is called from the worker
+     * threads and must be thread-safe. Returns when every puzzle is done.
+     */
+    public void solveAll(List<String> puzzles, Consumer<Result> sink) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        // Bounds the puzzles submitted but not yet finished.
+        Semaphore queued = new Semaphore(numThreads * QUEUED_PER_THREAD);
+        try {
+            for (String puzzle : puzzles) {
+                queued.acquire();
+                pool.execute(() -> {
+                    try {
+                        sink.accept(solve(puzzle));
+                    } finally {
+                        queued.release();
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /*
+     * Encodes, solves and decodes one puzzle. Failures to read or encode the puzzle are reported as an
+     * ERROR result rather than thrown. When the time limit runs out, the stage running then is stopped
+     * and the result is TIMEOUT.
+     */
+    public Result solve(String puzzle) {
+        long started = System.nanoTime();
+        FrontEnd frontEnd = new FrontEnd();
+        DPLL dpll = new DPLL();
+        AtomicReference<Preprocessor> preprocessing = new AtomicReference<>();
+        // The solver is stopped first, so once it is stopped every later stage knows the time is up.
+        ScheduledFuture<?> deadline = timeoutSeconds > 0 ? timer.schedule(() -> {
+            dpll.stop();
+            frontEnd.stop();
+            Preprocessor preprocessor = preprocessing.get();
+            if (preprocessor != null) preprocessor.stop();
+        }, timeoutSeconds, TimeUnit.SECONDS) : null;
+        try {
+            SolutionCache.Query query = cache != null ? SolutionCache.query(puzzle) : null;
+            List<String> cached = query != null ? cache.get(query) : null;
+            if (cached != null) {
+                long millis = (System.nanoTime() - started) / 1000000;
+                if (cached.isEmpty()) return new Result(puzzle, Status.NO_SOLUTION, millis, null, null);
+                return new Result(puzzle, Status.SOLVED, millis, cached, null);
+            }
+            frontEnd.setSymmetryBreaking(symmetry);
+            frontEnd.setReachabilityPruning(prune);
+            frontEnd.setAtMostOne(atMostOne);
+            Cnf cnf = frontEnd.encode(puzzle);
+            if (dpll.isStopped()) return timeout(puzzle, started);
+            Preprocessor preprocessor = null;
+            Cnf clauses = cnf;
+            if (preprocess) {
+                preprocessor = new Preprocessor(cnf);
+                preprocessing.set(preprocessor);
+                if (dpll.isStopped()) return timeout(puzzle, started);
+                clauses = preprocessor.simplify();
+                if (dpll.isStopped()) return timeout(puzzle, started);
+            }
+            dpll.setCdcl(cdcl);
+            if (heuristic != null) dpll.setHeuristic(PegSolver.heuristic(heuristic));
+            dpll.addClauses(clauses);
+            boolean satisfied = dpll.solve();
+            // A deadline that fires just after the search finished leaves its answer standing.
+            if (dpll.isInterrupted()) return timeout(puzzle, started);
+            long millis = (System.nanoTime() - started) / 1000000;
+            if (!satisfied) {
+                if (cache != null) cache.put(query, null);
+                return new Result(puzzle, Status.NO_SOLUTION, millis, null, null);
+            }
+            if (preprocessor != null) preprocessor.extendModel(dpll);
+            BackEnd backEnd = new BackEnd();
+            backEnd.setHoleMap(frontEnd.getHoleMap());
+            List<String> path = backEnd.decodePath(cnf.getSymbols(), dpll);
+            if (cache != null) cache.put(query, path);
+            millis = (System.nanoTime() - started) / 1000000;
+            return new Result(puzzle, Status.SOLVED, millis, path, null);
+        } catch (IOException | RuntimeException e) {
+            // A stopped encode ends with an InterruptedIOException.
+            if (dpll.isStopped()) return timeout(puzzle, started);
+            return new Result(puzzle, Status.ERROR, (System.nanoTime() - started) / 1000000, null, e.toString());
+        } finally {
+            if (deadline != null) deadline.cancel(false);
+        }
+    }
+
+    private static Result timeout(String puzzle, long started) {
+        return new Result(puzzle, Status.TIMEOUT, (System.nanoTime() - started) / 1000000, null, null);
+    }
+
+    /*
+     * Puzzle paths of a manifest, or the puzzle files of a directory in name order. Files in a directory
+     * whose first line is not "holes initialHole", such as the outputs of earlier runs, are skipped.
+     */
+    public static List<String> puzzles(String source) throws IOException {
+        File file = new File(source);
+        List<String> puzzles = new ArrayList<>();
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files == null) throw new IOException("Cannot list " + source);
+            Arrays.sort(files);
+            for (File f : files) {
+                if (f.isFile() && isPuzzle(f)) puzzles.add(f.getPath());
+            }
+            return puzzles;
+        }
+        BufferedReader br = new BufferedReader(new FileReader(file));
+        String line;
+        while ((line = br.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            File puzzle = new File(line);
+            puzzles.add(puzzle.isAbsolute() ? line : new File(file.getAbsoluteFile().getParentFile(), line).getPath());
+        }
+        br.close();
+        return puzzles;
+    }
+
+    private static boolean isPuzzle(File file) throws IOException {
+        BufferedReader br = new BufferedReader(new FileReader(file));
+        String line = br.readLine();
+        br.close();
+        return line != null && line.trim().matches("\\d+\\s+\\d+");
+    }
+}
@@ -0,0 +1,221 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the peg solver stages.
+ * Each run encodes a puzzle with the front end, solves it with the DPLL program and decodes the path with
+ * the back end, all in memory, and times the three stages separately and end to end. The bytes allocated
+ * by the benchmark thread are measured the same way, so allocation regressions show up next to time.
+ * Every board gets warmup runs before the measured runs so the JIT has compiled the hot code; the table
+ * shows the mean per measured run. A solve that takes longer than the time limit is stopped, reported
+ * as TIMEOUT and not repeated.
+ *
+ * With -engine bitboard the direct BitboardSolver search is timed instead. Reading the puzzle and
+ * building the jump masks count as encoding, there is nothing to decode and no atoms or clauses.
+ *
+ * Without puzzle files the generated corpus of Boards is used, triangles of 10 to 21 holes and the English
+ * and European cross boards, from start holes that can and cannot be solved.
+ * Usage: java Benchmark [-warmup n] [-runs n] [-timeout seconds] [-cdcl] [-amo pairwise|sequential|commander|binary] [-prune] [-engine sat|bitboard] [puzzle files]
+ */
+public class Benchmark {
+    private static final int ENCODE = 0;
+    private static final int SOLVE = 1;
+    private static final int DECODE = 2;
+    private static final int TOTAL = 3;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    // Per thread allocation counters are a HotSpot extension of the management API.
+    private static final boolean ALLOCATION_SUPPORTED = THREADS instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported();
+
+    private int warmup = 2;
+    private int runs = 5;
+    private int timeoutSeconds = 10;
+    private boolean cdcl;
+    private boolean prune;
+    private boolean bitboard;
+    // Size of the puzzle of the last run.
+    private int numHoles;
+    private int numAtoms;
+    private int numClauses;
+    private AtMostOne atMostOne = AtMostOne.PAIRWISE;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "benchmark-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static void main(String[] args) throws IOException {
+        Benchmark benchmark = new Benchmark();
+        List<String> puzzles = new ArrayList<>();
+        boolean badArgs = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-warmup") && i + 1 < args.length) {
+                benchmark.warmup = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-runs") && i + 1 < args.length) {
+                benchmark.runs = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (arg.equals("-timeout") && i + 1 < args.length) {
+                benchmark.timeoutSeconds = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-cdcl")) {
+                benchmark.cdcl = true;
+            } else if (arg.equals("-engine") && i + 1 < args.length) {
+                String engine = args[++i];
+                benchmark.bitboard = engine.equals("bitboard");
+                badArgs |= !benchmark.bitboard && !engine.equals("sat");
+            } else if (arg.equals("-prune")) {
+                benchmark.prune = true;
+            } else if (arg.equals("-amo") && i + 1 < args.length) {
+                benchmark.atMostOne = PegSolver.atMostOne(args[++i]);
+                badArgs |= benchmark.atMostOne == null;
+            } else if (!arg.startsWith("-")) {
+                puzzles.add(arg);
+            } else {
+                badArgs = true;
+            }
+        }
+        if (badArgs) {
+            System.out.println("Usage: java Benchmark [-warmup n] [-runs n] [-timeout seconds] [-cdcl] [-amo pairwise|sequential|commander|binary] [-prune] [-engine sat|bitboard] [puzzle files]");
+            System.exit(-1);
+        }
+        if (puzzles.isEmpty()) {
+            File dir = Files.createTempDirectory("peg-benchmark").toFile();
+            for (Map.Entry<String, String> board : Boards.corpus().entrySet()) {
+                File file = new File(dir, board.getKey());
+                Boards.write(board.getValue(), file.getPath());
+                file.deleteOnExit();
+                puzzles.add(file.getPath());
+            }
+            dir.deleteOnExit();
+        }
+        System.out.println(String.format("%-16s %5s %7s %8s %-7s %10s %10s %10s %10s %10s %10s %10s %9s",
+                "board", "holes", "atoms", "clauses", "result", "encode ms", "solve ms", "decode ms", "total ms",
+                "encode MB", "solve MB", "total MB", "MB/s"));
+        for (String puzzle : puzzles) benchmark.run(puzzle);
+    }
+
+    /*
+     * Benchmark one puzzle and print its row of the table.
+     */
+    private void run(String puzzle) throws IOException {
+        long[] time = new long[4];
+        long[] allocated = new long[4];
+        long[] runTime = new long[4];
+        long[] runAllocated = new long[4];
+        String result = null;
+        int measured = 0;
+        for (int i = 0; i < warmup + runs; i++) {
+            result = bitboard ? runBitboard(puzzle, runTime, runAllocated) : runSat(puzzle, runTime, runAllocated);
+            if (result.equals("TIMEOUT")) {
+                // Report the run that timed out on its own, repeating it would only take longer.
+                time = runTime;
+                allocated = runAllocated;
+                measured = 1;
+                break;
+            }
+            if (i < warmup) continue;
+            for (int s = 0; s < 4; s++) {
+                time[s] += runTime[s];
+                allocated[s] += runAllocated[s];
+            }
+            measured++;
+        }
+        double totalSeconds = time[TOTAL] / 1e9;
+        System.out.println(String.format("%-16s %5d %7d %8d %-7s %10.1f %10.1f %10.2f %10.1f %10s %10s %10s %9s",
+                new File(puzzle).getName(), numHoles, numAtoms, numClauses, result, millis(time[ENCODE], measured),
+                millis(time[SOLVE], measured), millis(time[DECODE], measured), millis(time[TOTAL], measured), megabytes(allocated[ENCODE], measured),
+                megabytes(allocated[SOLVE], measured), megabytes(allocated[TOTAL], measured),
+                !ALLOCATION_SUPPORTED || totalSeconds == 0 ? "n/a" : String.format("%.0f", allocated[TOTAL] / 1e6 / totalSeconds)));
+    }
+
+    /*
+     * Encodes, solves and decodes a puzzle once, stores the time and bytes allocated of each stage in
+     * runTime and runAllocated, and returns SAT, UNSAT or TIMEOUT.
+     */
+    private String runSat(String puzzle, long[] runTime, long[] runAllocated) throws IOException {
+        FrontEnd frontEnd = new FrontEnd();
+        frontEnd.setAtMostOne(atMostOne);
+        frontEnd.setReachabilityPruning(prune);
+        long t0 = System.nanoTime();
+        long a0 = allocatedBytes();
+        Cnf cnf = frontEnd.encode(puzzle);
+        long t1 = System.nanoTime();
+        long a1 = allocatedBytes();
+        DPLL dpll = new DPLL();
+        dpll.setCdcl(cdcl);
+        ScheduledFuture<?> deadline = timer.schedule(dpll::stop, timeoutSeconds, TimeUnit.SECONDS);
+        dpll.addClauses(cnf);
+        boolean satisfied = dpll.solve();
+        deadline.cancel(false);
+        long t2 = System.nanoTime();
+        long a2 = allocatedBytes();
+        List<String> path = satisfied ? new BackEnd().decodePath(cnf.getSymbols(), dpll) : null;
+        long t3 = System.nanoTime();
+        long a3 = allocatedBytes();
+        record(runTime, t0, t1, t2, t3);
+        record(runAllocated, a0, a1, a2, a3);
+        numHoles = frontEnd.getNumHoles();
+        numAtoms = cnf.getNumVars();
+        numClauses = cnf.getNumClauses();
+        return dpll.isStopped() ? "TIMEOUT" : path != null ? "SAT" : "UNSAT";
+    }
+
+    /*
+     * As runSat with the bitboard engine, which has no decoding stage.
+     */
+    private String runBitboard(String puzzle, long[] runTime, long[] runAllocated) throws IOException {
+        long t0 = System.nanoTime();
+        long a0 = allocatedBytes();
+        FrontEnd frontEnd = new FrontEnd();
+        frontEnd.readPuzzle(puzzle);
+        BitboardSolver solver = new BitboardSolver(frontEnd.getNumHoles(), frontEnd.getInitialHole(), frontEnd.getTriples());
+        long t1 = System.nanoTime();
+        long a1 = allocatedBytes();
+        ScheduledFuture<?> deadline = timer.schedule(solver::stop, timeoutSeconds, TimeUnit.SECONDS);
+        List<String> path = solver.solve(1);
+        deadline.cancel(false);
+        long t2 = System.nanoTime();
+        long a2 = allocatedBytes();
+        record(runTime, t0, t1, t2, t2);
+        record(runAllocated, a0, a1, a2, a2);
+        numHoles = frontEnd.getNumHoles();
+        numAtoms = 0;
+        numClauses = 0;
+        return solver.isStopped() ? "TIMEOUT" : path != null ? "SAT" : "UNSAT";
+    }
+
+    /*
+     * Stage values from the readings taken before encoding, after encoding, after solving and after decoding.
+     */
+    private static void record(long[] stages, long encode, long solve, long decode, long end) {
+        stages[ENCODE] = solve - encode;
+        stages[SOLVE] = decode - solve;
+        stages[DECODE] = end - decode;
+        stages[TOTAL] = end - encode;
+    }
+
+    private static double millis(long nanos, int measured) {
+        return nanos / 1e6 / measured;
+    }
+
+    private static String megabytes(long bytes, int measured) {
+        return !ALLOCATION_SUPPORTED ? "n/a" : String.format("%.2f", bytes / 1e6 / measured);
+    }
+
+    /*
+     * Bytes allocated so far by the current thread, 0 if the JVM cannot tell.
+     */
+    private static long allocatedBytes() {
+        if (!ALLOCATION_SUPPORTED) return 0;
+        return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
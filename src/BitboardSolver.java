@@ -0,0 +1,277 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Direct search engine of the peg solver, an alternative to encoding the puzzle as clauses.
+ * A position is a bitboard of up to 128 holes held in two longs, hole h being bit h - 1. Every triple
+ * gives two jumps, each precomputed as the mask of the two holes that must hold a peg, the mask of the
+ * hole that must be empty and the mask of all three holes to flip. A depth first search plays jumps
+ * until the goal number of pegs is left.
+ *
+ * Positions from which the goal cannot be reached are remembered in a transposition table. A position
+ * is stored in canonical form, the smallest of its images under the automorphisms of the board, so
+ * a dead position is also recognized when the search reaches it rotated or reflected. The table has a
+ * fixed number of slots and a new dead position overwrites whatever was in its slot. Memory stays
+ * bounded, and an evicted position only costs a second search.
+ *
+ * Before searching for a single peg, the solver checks the position classes of the board. A jump flips
+ * three holes, so over GF(2) every reachable position differs from the start by a sum of jump masks. If
+ * no one-peg position differs from the start by an element of that span, the puzzle is unsolvable
+ * without any search. This is how the European board from its center is ruled out.
+ *
+ * The path is given in the same Jump(A,B,C,I) form as the back end decodes from a model.
+ */
+public class BitboardSolver {
+    public static final int MAX_HOLES = 128;
+    public static final int DEFAULT_TABLE_BITS = 20;
+    // Each automorphism costs a table lookup per byte of the bitboard at every node.
+    private static final int MAX_SYMMETRIES = 64;
+
+    private final int numHoles;
+    private final int initialHole;
+    private final int[][] jumps;
+    private final long[] needLo;
+    private final long[] needHi;
+    private final long[] emptyLo;
+    private final long[] emptyHi;
+    private final long[] flipLo;
+    private final long[] flipHi;
+    // symmetryLo[s][k << 8 | v] is the image under the s-th automorphism of byte k of the board set to v.
+    private final long[][] symmetryLo;
+    private final long[][] symmetryHi;
+    private final int numBytes;
+    private final long[] deadLo;
+    private final long[] deadHi;
+    private final int tableShift;
+    // Basis of the GF(2) span of the jump masks, spanLo/spanHi[i] has its highest bit at i or is empty.
+    private final long[] spanLo = new long[MAX_HOLES];
+    private final long[] spanHi = new long[MAX_HOLES];
+    private long canonicalLo;
+    private long canonicalHi;
+    private int[] path;
+    private int pathLength;
+    private int goalPegs;
+    private long nodes;
+    private long deadHits;
+    private volatile boolean stopRequested;
+
+    /*
+     * Each triple is {A, B, C} with B the middle hole, holes are numbered from 1 to numHoles.
+     */
+    public BitboardSolver(int numHoles, int initialHole, List<int[]> triples) {
+        this(numHoles, initialHole, triples, DEFAULT_TABLE_BITS);
+    }
+
+    /*
+     * As above with a transposition table of 2^tableBits positions, 16 bytes each.
+     */
+    public BitboardSolver(int numHoles, int initialHole, List<int[]> triples, int tableBits) {
+        if (numHoles > MAX_HOLES) {
+            throw new IllegalArgumentException("Bitboards hold at most " + MAX_HOLES + " holes, not " + numHoles);
+        }
+        this.numHoles = numHoles;
+        this.initialHole = initialHole;
+        jumps = new int[triples.size() * 2][];
+        for (int t = 0; t < triples.size(); t++) {
+            int[] triple = triples.get(t);
+            jumps[2 * t] = triple;
+            jumps[2 * t + 1] = new int[]{triple[2], triple[1], triple[0]};
+        }
+        needLo = new long[jumps.length];
+        needHi = new long[jumps.length];
+        emptyLo = new long[jumps.length];
+        emptyHi = new long[jumps.length];
+        flipLo = new long[jumps.length];
+        flipHi = new long[jumps.length];
+        for (int m = 0; m < jumps.length; m++) {
+            int[] jump = jumps[m];
+            needLo[m] = lo(jump[0]) | lo(jump[1]);
+            needHi[m] = hi(jump[0]) | hi(jump[1]);
+            emptyLo[m] = lo(jump[2]);
+            emptyHi[m] = hi(jump[2]);
+            flipLo[m] = needLo[m] | emptyLo[m];
+            flipHi[m] = needHi[m] | emptyHi[m];
+            addToSpan(flipLo[m], flipHi[m]);
+        }
+        numBytes = (numHoles + 7) / 8;
+        List<int[]> automorphisms = new BoardSymmetry(numHoles, triples).getAutomorphisms();
+        int numSymmetries = Math.min(automorphisms.size(), MAX_SYMMETRIES);
+        symmetryLo = new long[numSymmetries][numBytes << 8];
+        symmetryHi = new long[numSymmetries][numBytes << 8];
+        for (int s = 0; s < numSymmetries; s++) {
+            int[] perm = automorphisms.get(s);
+            for (int k = 0; k < numBytes; k++) {
+                for (int v = 0; v < 256; v++) {
+                    for (int bit = 0; bit < 8; bit++) {
+                        int hole = 8 * k + bit + 1;
+                        if ((v >> bit & 1) == 0 || hole > numHoles) continue;
+                        symmetryLo[s][k << 8 | v] |= lo(perm[hole]);
+                        symmetryHi[s][k << 8 | v] |= hi(perm[hole]);
+                    }
+                }
+            }
+        }
+        deadLo = new long[1 << tableBits];
+        deadHi = new long[1 << tableBits];
+        tableShift = 64 - tableBits;
+    }
+
+    /*
+     * Searches for jumps that leave at most maxPegs pegs, one for the classic puzzle. Returns the path
+     * ordered by timepoint, or null if there is none or the search was stopped. Every jump removes one
+     * peg, so the path found is also a shortest one.
+     */
+    public List<String> solve(int maxPegs) {
+        if (goalPegs != maxPegs) {
+            // Positions dead for one goal may reach a looser one.
+            Arrays.fill(deadLo, 0);
+            Arrays.fill(deadHi, 0);
+        }
+        goalPegs = maxPegs;
+        path = new int[numHoles];
+        long lo = 0;
+        long hi = 0;
+        for (int h = 1; h <= numHoles; h++) {
+            if (h == initialHole) continue;
+            lo |= lo(h);
+            hi |= hi(h);
+        }
+        if (goalPegs == 1 && !singlePegReachable(lo, hi)) return null;
+        if (!search(lo, hi, numHoles - 1, 0)) return null;
+        List<String> jumpPath = new ArrayList<>();
+        for (int t = 0; t < pathLength; t++) {
+            int[] jump = jumps[path[t]];
+            jumpPath.add("Jump(" + jump[0] + "," + jump[1] + "," + jump[2] + "," + (t + 1) + ")");
+        }
+        return jumpPath;
+    }
+
+    /*
+     * Makes a running solve give up as soon as possible, it then returns null.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    public boolean isStopped() {
+        return stopRequested;
+    }
+
+    /*
+     * Positions searched so far.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /*
+     * Positions cut off because the transposition table knew them, or a symmetric image of them, as dead.
+     */
+    public long getDeadHits() {
+        return deadHits;
+    }
+
+    private boolean search(long lo, long hi, int pegs, int depth) {
+        if (pegs <= goalPegs) {
+            pathLength = depth;
+            return true;
+        }
+        if (stopRequested) return false;
+        nodes++;
+        canonicalize(lo, hi);
+        long keyLo = canonicalLo;
+        long keyHi = canonicalHi;
+        int slot = slot(keyLo, keyHi);
+        if (deadLo[slot] == keyLo && deadHi[slot] == keyHi) {
+            deadHits++;
+            return false;
+        }
+        for (int m = 0; m < jumps.length; m++) {
+            if ((lo & needLo[m]) != needLo[m] || (hi & needHi[m]) != needHi[m]) continue;
+            if ((lo & emptyLo[m]) != 0 || (hi & emptyHi[m]) != 0) continue;
+            path[depth] = m;
+            if (search(lo ^ flipLo[m], hi ^ flipHi[m], pegs - 1, depth + 1)) return true;
+            if (stopRequested) return false;
+        }
+        // A board with pegs left is never all zero, so the empty slots cannot match a position.
+        deadLo[slot] = keyLo;
+        deadHi[slot] = keyHi;
+        return false;
+    }
+
+    /*
+     * Whether some position with one peg is in the position class of the given one.
+     */
+    private boolean singlePegReachable(long lo, long hi) {
+        for (int h = 1; h <= numHoles; h++) {
+            if (inSpan(lo ^ lo(h), hi ^ hi(h))) return true;
+        }
+        return false;
+    }
+
+    private void addToSpan(long lo, long hi) {
+        for (int bit = MAX_HOLES - 1; bit >= 0; bit--) {
+            if (!testBit(lo, hi, bit)) continue;
+            if (spanLo[bit] == 0 && spanHi[bit] == 0) {
+                spanLo[bit] = lo;
+                spanHi[bit] = hi;
+                return;
+            }
+            lo ^= spanLo[bit];
+            hi ^= spanHi[bit];
+        }
+    }
+
+    private boolean inSpan(long lo, long hi) {
+        for (int bit = MAX_HOLES - 1; bit >= 0; bit--) {
+            if (!testBit(lo, hi, bit)) continue;
+            if (spanLo[bit] == 0 && spanHi[bit] == 0) return false;
+            lo ^= spanLo[bit];
+            hi ^= spanHi[bit];
+        }
+        return true;
+    }
+
+    private static boolean testBit(long lo, long hi, int bit) {
+        return ((bit < 64 ? lo >>> bit : hi >>> (bit - 64)) & 1) != 0;
+    }
+
+    /*
+     * Sets canonicalLo and canonicalHi to the smallest image of the position, comparing the high words
+     * first, both unsigned.
+     */
+    private void canonicalize(long lo, long hi) {
+        canonicalLo = lo;
+        canonicalHi = hi;
+        for (int s = 0; s < symmetryLo.length; s++) {
+            long[] imageLo = symmetryLo[s];
+            long[] imageHi = symmetryHi[s];
+            long l = 0;
+            long h = 0;
+            for (int k = 0; k < numBytes; k++) {
+                int v = (int) ((k < 8 ? lo >>> (8 * k) : hi >>> (8 * (k - 8))) & 0xff);
+                l |= imageLo[k << 8 | v];
+                h |= imageHi[k << 8 | v];
+            }
+            int cmp = Long.compareUnsigned(h, canonicalHi);
+            if (cmp < 0 || cmp == 0 && Long.compareUnsigned(l, canonicalLo) < 0) {
+                canonicalLo = l;
+                canonicalHi = h;
+            }
+        }
+    }
+
+    private int slot(long lo, long hi) {
+        long hash = lo * 0x9E3779B97F4A7C15L ^ Long.rotateLeft(hi * 0xC2B2AE3D27D4EB4FL, 31);
+        return (int) ((hash ^ hash >>> 29) * 0x9E3779B97F4A7C15L >>> tableShift);
+    }
+
+    private static long lo(int hole) {
+        return hole <= 64 ? 1L << (hole - 1) : 0;
+    }
+
+    private static long hi(int hole) {
+        return hole > 64 ? 1L << (hole - 65) : 0;
+    }
+}
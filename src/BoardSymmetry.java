@@ -0,0 +1,125 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Automorphisms of a peg board.
+ * A permutation of the holes is an automorphism when it maps every triple to a triple with the middle hole
+ * going to the middle hole, so it turns any legal sequence of jumps into another legal sequence of jumps.
+ * On triangular and cross boards these are the rotations and reflections. They are found by backtracking
+ * over the holes in breadth first order, checking each triple as soon as all of its holes have an image.
+ * A permutation is stored as an int array indexed by hole, entry 0 is unused.
+ */
+public class BoardSymmetry {
+    // Limits for boards with unusually many symmetries, every automorphism found is still exact.
+    private static final int MAX_AUTOMORPHISMS = 4096;
+    private static final int MAX_NODES = 1000000;
+
+    private final int numHoles;
+    private final Set<Long> tripleKeys = new HashSet<>();
+    private final List<List<int[]>> incident = new ArrayList<>();
+    private final int[] endDegree;
+    private final int[] middleDegree;
+    private final int[] order;
+    private final int[] position;
+    private final List<int[]> automorphisms = new ArrayList<>();
+    private int nodes;
+
+    /*
+     * Each triple is {A, B, C} with B the middle hole, holes are numbered from 1 to numHoles.
+     */
+    public BoardSymmetry(int numHoles, List<int[]> triples) {
+        this.numHoles = numHoles;
+        endDegree = new int[numHoles + 1];
+        middleDegree = new int[numHoles + 1];
+        for (int h = 0; h <= numHoles; h++) incident.add(new ArrayList<int[]>());
+        for (int[] triple : triples) {
+            tripleKeys.add(key(triple[0], triple[1], triple[2]));
+            endDegree[triple[0]]++;
+            endDegree[triple[2]]++;
+            middleDegree[triple[1]]++;
+            incident.get(triple[0]).add(triple);
+            incident.get(triple[1]).add(triple);
+            incident.get(triple[2]).add(triple);
+        }
+        order = breadthFirstOrder();
+        position = new int[numHoles + 1];
+        for (int i = 0; i < order.length; i++) position[order[i]] = i;
+        int[] perm = new int[numHoles + 1];
+        search(0, perm, new boolean[numHoles + 1]);
+    }
+
+    /*
+     * All automorphisms found, the identity included.
+     */
+    public List<int[]> getAutomorphisms() {
+        return automorphisms;
+    }
+
+    private void search(int depth, int[] perm, boolean[] used) {
+        if (automorphisms.size() >= MAX_AUTOMORPHISMS || nodes++ >= MAX_NODES) return;
+        if (depth == order.length) {
+            automorphisms.add(perm.clone());
+            return;
+        }
+        int hole = order[depth];
+        for (int image = 1; image <= numHoles; image++) {
+            if (used[image] || endDegree[image] != endDegree[hole] || middleDegree[image] != middleDegree[hole]) {
+                continue;
+            }
+            perm[hole] = image;
+            if (consistent(hole, depth, perm)) {
+                used[image] = true;
+                search(depth + 1, perm, used);
+                used[image] = false;
+            }
+        }
+        perm[hole] = 0;
+    }
+
+    /*
+     * Checks the triples of hole whose other holes already have an image.
+     */
+    private boolean consistent(int hole, int depth, int[] perm) {
+        for (int[] triple : incident.get(hole)) {
+            if (position[triple[0]] > depth || position[triple[1]] > depth || position[triple[2]] > depth) continue;
+            if (!tripleKeys.contains(key(perm[triple[0]], perm[triple[1]], perm[triple[2]]))) return false;
+        }
+        return true;
+    }
+
+    /*
+     * Holes in breadth first order over the triples, so each hole shares a triple with an earlier one
+     * whenever the board is connected.
+     */
+    private int[] breadthFirstOrder() {
+        int[] result = new int[numHoles];
+        boolean[] visited = new boolean[numHoles + 1];
+        int size = 0;
+        for (int start = 1; start <= numHoles; start++) {
+            if (visited[start]) continue;
+            visited[start] = true;
+            result[size++] = start;
+            for (int head = size - 1; head < size; head++) {
+                for (int[] triple : incident.get(result[head])) {
+                    for (int h : triple) {
+                        if (!visited[h]) {
+                            visited[h] = true;
+                            result[size++] = h;
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Key of a triple, the same for both directions.
+     */
+    private long key(int a, int b, int c) {
+        long n = numHoles + 1;
+        return ((long) b * n + Math.min(a, c)) * n + Math.max(a, c);
+    }
+}
@@ -0,0 +1,117 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Generated peg boards.
+ * Boards are produced in the puzzle input format: a line "holes initialHole" followed by one line "A B C"
+ * for every three holes in a row, B being the middle hole. Holes are numbered row by row from 1.
+ * Triangular boards have rows of 1, 2, 3, ... holes and lines in three directions, cross boards are a
+ * 7 x 7 grid without its corners and lines along the rows and columns.
+ */
+public class Boards {
+    private static final int[][] TRIANGLE_DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}};
+    private static final int[][] CROSS_DIRECTIONS = {{0, 1}, {1, 0}};
+
+    private Boards() {
+
+    }
+
+    /*
+     * Triangular board with the given number of rows, 4 rows make 10 holes, 5 make 15 and 6 make 21.
+     */
+    public static String triangle(int rows, int initialHole) {
+        boolean[][] grid = new boolean[rows][rows];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c <= r; c++) grid[r][c] = true;
+        }
+        return board(grid, TRIANGLE_DIRECTIONS, initialHole);
+    }
+
+    /*
+     * English cross board with 33 holes, its center is hole 17.
+     */
+    public static String englishCross(int initialHole) {
+        return board(cross(false), CROSS_DIRECTIONS, initialHole);
+    }
+
+    /*
+     * European cross board with 37 holes, its center is hole 19.
+     */
+    public static String europeanCross(int initialHole) {
+        return board(cross(true), CROSS_DIRECTIONS, initialHole);
+    }
+
+    /*
+     * The benchmark corpus by name. The 10-hole triangle cannot be solved from holes 1 and 5, and the
+     * European cross cannot be solved from its center, the other boards can.
+     */
+    public static Map<String, String> corpus() {
+        Map<String, String> corpus = new LinkedHashMap<>();
+        corpus.put("triangle10-1", triangle(4, 1));
+        corpus.put("triangle10-2", triangle(4, 2));
+        corpus.put("triangle10-5", triangle(4, 5));
+        corpus.put("triangle15-1", triangle(5, 1));
+        corpus.put("triangle15-4", triangle(5, 4));
+        corpus.put("triangle15-13", triangle(5, 13));
+        corpus.put("triangle21-1", triangle(6, 1));
+        corpus.put("english33-17", englishCross(17));
+        corpus.put("european37-19", europeanCross(19));
+        return corpus;
+    }
+
+    /*
+     * Write a generated board to a puzzle input file.
+     */
+    public static void write(String board, String output) throws IOException {
+        BufferedWriter bw = new BufferedWriter(new FileWriter(output));
+        bw.write(board);
+        bw.close();
+    }
+
+    private static boolean[][] cross(boolean european) {
+        boolean[][] grid = new boolean[7][7];
+        for (int r = 0; r < 7; r++) {
+            for (int c = 0; c < 7; c++) {
+                boolean corner = (r < 2 || r > 4) && (c < 2 || c > 4);
+                boolean europeanExtra = european && (r == 1 || r == 5) && (c == 1 || c == 5);
+                grid[r][c] = !corner || europeanExtra;
+            }
+        }
+        return grid;
+    }
+
+    /*
+     * Number the holes of grid row by row and list the three-in-a-row triples along the directions.
+     */
+    private static String board(boolean[][] grid, int[][] directions, int initialHole) {
+        int[][] hole = new int[grid.length][];
+        int numHoles = 0;
+        for (int r = 0; r < grid.length; r++) {
+            hole[r] = new int[grid[r].length];
+            for (int c = 0; c < grid[r].length; c++) {
+                if (grid[r][c]) hole[r][c] = ++numHoles;
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(numHoles).append(' ').append(initialHole).append('\n');
+        for (int r = 0; r < grid.length; r++) {
+            for (int c = 0; c < grid[r].length; c++) {
+                for (int[] d : directions) {
+                    int a = holeAt(hole, r, c);
+                    int b = holeAt(hole, r + d[0], c + d[1]);
+                    int e = holeAt(hole, r + 2 * d[0], c + 2 * d[1]);
+                    if (a > 0 && b > 0 && e > 0) sb.append(a).append(' ').append(b).append(' ').append(e).append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int holeAt(int[][] hole, int r, int c) {
+        if (r < 0 || r >= hole.length || c < 0 || c >= hole[r].length) return 0;
+        return hole[r][c];
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Decision heuristic of the DPLL program.
+ * The DPLL program reports atoms, clauses, conflicts and unassignments to the heuristic, and asks it for
+ * the next atom to branch on. Literals are passed as the DPLL literal codes, 2 * atom for the positive
+ * literal and 2 * atom + 1 for the negative one.
+ */
+public interface BranchingHeuristic {
+
+    /*
+     * Called once for every atom, the first time it appears in a clause.
+     */
+    void addAtom(int atom);
+
+    /*
+     * Called for every input clause, with its literal codes in codes[start .. start + size).
+     */
+    void onClause(int[] codes, int start, int size);
+
+    /*
+     * Called with the learned clause after every conflict, or with the falsified clause when nothing is learned.
+     */
+    void onConflict(int[] codes, int start, int size);
+
+    /*
+     * Called whenever backtracking unassigns an atom.
+     */
+    void onUnassign(int atom);
+
+    /*
+     * Returns the next unassigned atom to branch on, or 0 if every atom has a value.
+     * values is indexed by atom: -1 unassigned, 0 false, 1 true.
+     */
+    int pick(int[] values);
+
+    /*
+     * Called for every entry of the symbol table that follows the clauses, if usesSymbols is true.
+     */
+    default void onSymbol(int atom, String symbol) {
+
+    }
+
+    /*
+     * Whether the heuristic wants the symbol table. Readers skip decoding symbols when it does not.
+     */
+    default boolean usesSymbols() {
+        return false;
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free exchange of short learned clauses between the solvers of a portfolio.
+ * A clause is published into a fixed size ring at a slot taken from an atomic counter. Every solver
+ * reads the ring from a cursor of its own and skips the clauses it published itself. A reader that
+ * falls more than a ring behind misses the overwritten clauses, and a reader may see a slot before its
+ * writer fills it; both only lose or repeat a hint, every shared clause is implied by the formula.
+ */
+public class ClauseExchange {
+    private final AtomicReferenceArray<int[]> ring;
+    private final AtomicLong published = new AtomicLong();
+    private final int maxSize;
+
+    /*
+     * capacity is the number of clauses kept in the ring, maxSize the longest clause worth sharing.
+     */
+    public ClauseExchange(int capacity, int maxSize) {
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.maxSize = maxSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /*
+     * Publishes the clause lits[0 .. size) of signed atoms on behalf of solver source.
+     */
+    public void publish(int source, int[] lits, int size) {
+        int[] entry = new int[size + 1];
+        entry[0] = source;
+        System.arraycopy(lits, 0, entry, 1, size);
+        long slot = published.getAndIncrement();
+        ring.set((int) (slot % ring.length()), entry);
+    }
+
+    /*
+     * Hands every clause published by other solvers since cursor to sink and returns the new cursor.
+     */
+    public long drain(int reader, long cursor, ClauseSink sink) {
+        long end = published.get();
+        if (end - cursor > ring.length()) cursor = end - ring.length();
+        for (; cursor < end; cursor++) {
+            int[] entry = ring.get((int) (cursor % ring.length()));
+            if (entry == null || entry[0] == reader) continue;
+            sink.addClause(entry, 1, entry.length - 1);
+        }
+        return end;
+    }
+}
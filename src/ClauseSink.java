@@ -0,0 +1,13 @@
+/**
+ * Anything clauses can be added to, such as an in-memory Cnf or a DPLL solver.
+ * Lets a reader or generator hand each clause over as soon as it is complete, without knowing where
+ * it ends up.
+ */
+public interface ClauseSink {
+
+    /*
+     * Adds a clause given as signed atom numbers in lits[offset .. offset + size).
+     * The array may be reused by the caller once the call returns.
+     */
+    void addClause(int[] lits, int offset, int size);
+}
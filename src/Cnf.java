@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Clauses of a puzzle held in memory.
+ * The front end builds it, the DPLL program reads it directly and the back end uses its symbol table to
+ * decode a model, so a solve needs no intermediate file. Literals are signed atom numbers stored back to
+ * back in one int array; clause i spans literals[clauseStart(i) .. clauseEnd(i)). The symbol table maps
+ * each atom to its name, e.g. Jump(1,2,4,1) or Peg(3,2).
+ */
+public class Cnf implements ClauseSink {
+    private int[] literals = new int[1024];
+    private int numLiterals;
+    private int[] clauseEnd = new int[256];
+    private int numClauses;
+    private int numVars;
+    private List<String> symbols = new ArrayList<>();
+
+    public Cnf() {
+        symbols.add(null); // Atoms are numbered from 1.
+    }
+
+    /*
+     * Adds a clause given as signed atom numbers.
+     */
+    public void addClause(int... lits) {
+        addClause(lits, lits.length);
+    }
+
+    /*
+     * Adds a clause made of the first size entries of lits.
+     */
+    public void addClause(int[] lits, int size) {
+        addClause(lits, 0, size);
+    }
+
+    @Override
+    public void addClause(int[] lits, int offset, int size) {
+        if (numLiterals + size > literals.length) {
+            literals = Arrays.copyOf(literals, Math.max(numLiterals + size, literals.length * 2));
+        }
+        if (numClauses == clauseEnd.length) clauseEnd = Arrays.copyOf(clauseEnd, numClauses * 2);
+        for (int i = offset; i < offset + size; i++) {
+            literals[numLiterals++] = lits[i];
+            numVars = Math.max(numVars, Math.abs(lits[i]));
+        }
+        clauseEnd[numClauses++] = numLiterals;
+    }
+
+    /*
+     * Names an atom in the symbol table.
+     */
+    public void setSymbol(int atom, String symbol) {
+        while (symbols.size() <= atom) symbols.add(null);
+        symbols.set(atom, symbol);
+        numVars = Math.max(numVars, atom);
+    }
+
+    /*
+     * Symbol table indexed by atom, entry 0 is unused and atoms without a name are null.
+     */
+    public List<String> getSymbols() {
+        return symbols;
+    }
+
+    public int getNumVars() {
+        return numVars;
+    }
+
+    public int getNumClauses() {
+        return numClauses;
+    }
+
+    public int clauseStart(int i) {
+        return i == 0 ? 0 : clauseEnd[i - 1];
+    }
+
+    public int clauseEnd(int i) {
+        return clauseEnd[i];
+    }
+
+    /*
+     * The backing literal array, valid up to clauseEnd(getNumClauses() - 1).
+     */
+    public int[] getLiterals() {
+        return literals;
+    }
+
+    /*
+     * Writes the clauses in the text format read by DPLL.dp: one clause per line, then a line "0",
+     * then one "atom symbol" line per named atom.
+     */
+    public void write(String output) throws IOException {
+        Dimacs.writeLines(this, output);
+    }
+}
@@ -0,0 +1,245 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cube and conquer mode of the DPLL program.
+ * A lookahead phase splits the formula into cubes, partial assignments that together cover every
+ * assignment not already refuted. Each cube is split in two on the atom whose two values propagate the
+ * most, measured as the product of the atoms each value fixes. A value that runs into a conflict is
+ * added to the cube as the opposite literal instead, and a cube with both values conflicting is dropped.
+ * Splitting goes breadth first until there are enough cubes to keep every thread busy.
+ *
+ * The cubes are then solved on a work-stealing fork-join pool. Every worker thread keeps one CDCL solver
+ * with all the clauses, and solves its cubes on it as assumptions, so what it learns on one cube
+ * helps with the next. The first cube found satisfiable stops all the others. The formula is
+ * unsatisfiable when every cube is.
+ *
+ * When the clauses have a symbol table, only Jump atoms are split on. The Peg atoms of a cube then follow
+ * by propagation, and splitting on them directly gave cubes of very uneven difficulty. Without a symbol
+ * table any atom can be split on.
+ */
+public class CubeAndConquer {
+    private static final int CUBES_PER_WORKER = 8;
+    // Atoms tried by the lookahead of each cube, those occurring in the most clauses.
+    private static final int LOOKAHEAD_CANDIDATES = 400;
+
+    private final int numWorkers;
+    private final List<DPLL> solvers = Collections.synchronizedList(new ArrayList<DPLL>());
+    private final AtomicReference<DPLL> winner = new AtomicReference<>();
+    private DPLL lookahead;
+    private volatile boolean stopRequested;
+    private int numCubes;
+    private int refutedCubes;
+    private SolverStats stats;
+
+    /*
+     * numWorkers threads solve the cubes, 0 means one per available processor.
+     */
+    public CubeAndConquer(int numWorkers) {
+        this.numWorkers = numWorkers > 0 ? numWorkers : Runtime.getRuntime().availableProcessors();
+    }
+
+    /*
+     * Stats that the stats of the lookahead and of every worker solver are included in while they run,
+     * see SolverStats.include.
+     */
+    public void setStats(SolverStats stats) {
+        this.stats = stats;
+    }
+
+    /*
+     * Solves cnf and returns the solver whose model can be read when isSatisfied is true. Otherwise
+     * the solver returned is the one that ran the lookahead.
+     */
+    public DPLL solve(Cnf cnf) throws InterruptedException {
+        lookahead = new DPLL();
+        if (stats != null) stats.include(lookahead.getStats());
+        lookahead.addClauses(cnf);
+        List<int[]> cubes = split(cnf);
+        numCubes = cubes.size();
+        if (cubes.isEmpty() || stopRequested) return lookahead;
+        ForkJoinPool pool = new ForkJoinPool(numWorkers);
+        ThreadLocal<DPLL> workerSolver = ThreadLocal.withInitial(() -> {
+            DPLL dpll = new DPLL();
+            dpll.setCdcl(true);
+            dpll.addClauses(cnf);
+            solvers.add(dpll);
+            if (stats != null) stats.include(dpll.getStats());
+            if (stopRequested || winner.get() != null) dpll.stop();
+            return dpll;
+        });
+        try {
+            pool.invoke(new Conquer(cubes, 0, cubes.size(), workerSolver));
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        return winner.get() != null ? winner.get() : lookahead;
+    }
+
+    public boolean isSatisfied() {
+        return winner.get() != null;
+    }
+
+    /*
+     * Stops the lookahead and every worker, solve then returns without an answer.
+     */
+    public void stop() {
+        stopRequested = true;
+        if (lookahead != null) lookahead.stop();
+        synchronized (solvers) {
+            for (DPLL dpll : solvers) dpll.stop();
+        }
+    }
+
+    public boolean isStopped() {
+        return stopRequested;
+    }
+
+    /*
+     * Cubes the lookahead produced, and how many of them it refuted on its own.
+     */
+    public int getNumCubes() {
+        return numCubes;
+    }
+
+    public int getRefutedCubes() {
+        return refutedCubes;
+    }
+
+    /*
+     * Counters and times of the lookahead and of every worker solver added together.
+     */
+    public SolverStats getStats() {
+        SolverStats total = new SolverStats();
+        if (lookahead != null) total.add(lookahead.getStats());
+        synchronized (solvers) {
+            for (DPLL dpll : solvers) total.add(dpll.getStats());
+        }
+        return total;
+    }
+
+    /*
+     * Splits the formula into cubes breadth first, a cube that cannot be split any further is kept as is.
+     */
+    private List<int[]> split(Cnf cnf) {
+        int[] candidates = candidates(cnf);
+        int target = numWorkers * CUBES_PER_WORKER;
+        Deque<int[]> open = new ArrayDeque<>();
+        List<int[]> done = new ArrayList<>();
+        open.add(new int[0]);
+        while (!open.isEmpty() && open.size() + done.size() < target && !stopRequested) {
+            int[] cube = open.poll();
+            int base = lookahead.lookahead(cube);
+            int best = 0;
+            long bestScore = 0;
+            for (int i = 0; i < candidates.length && base >= 0; i++) {
+                int atom = candidates[i];
+                int positive = lookahead.lookahead(append(cube, atom));
+                int negative = lookahead.lookahead(append(cube, -atom));
+                if (positive < 0 || negative < 0) {
+                    // A failed literal, its opposite holds in the whole cube.
+                    if (positive < 0 && negative < 0) {
+                        base = -1;
+                    } else {
+                        cube = append(cube, positive < 0 ? -atom : atom);
+                        base = Math.max(positive, negative);
+                    }
+                    continue;
+                }
+                if (positive == base || negative == base) continue; // Already fixed in the cube.
+                long score = (long) (positive - base) * (negative - base);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = atom;
+                }
+            }
+            if (base < 0) {
+                refutedCubes++;
+            } else if (best == 0) {
+                done.add(cube);
+            } else {
+                open.add(append(cube, best));
+                open.add(append(cube, -best));
+            }
+        }
+        done.addAll(open);
+        return done;
+    }
+
+    /*
+     * Atoms the lookahead tries, by decreasing number of clauses they occur in.
+     */
+    private static int[] candidates(Cnf cnf) {
+        int numVars = cnf.getNumVars();
+        int[] occurrences = new int[numVars + 1];
+        int[] literals = cnf.getLiterals();
+        for (int c = 0; c < cnf.getNumClauses(); c++) {
+            for (int k = cnf.clauseStart(c); k < cnf.clauseEnd(c); k++) occurrences[Math.abs(literals[k])]++;
+        }
+        List<String> symbols = cnf.getSymbols();
+        boolean named = symbols.size() > 1;
+        List<Integer> atoms = new ArrayList<>();
+        for (int atom = 1; atom <= numVars; atom++) {
+            String symbol = atom < symbols.size() ? symbols.get(atom) : null;
+            if (occurrences[atom] > 0 && (!named || symbol != null && symbol.startsWith("Jump("))) {
+                atoms.add(atom);
+            }
+        }
+        atoms.sort((a, b) -> occurrences[b] != occurrences[a] ? occurrences[b] - occurrences[a] : a - b);
+        int[] candidates = new int[Math.min(atoms.size(), LOOKAHEAD_CANDIDATES)];
+        for (int i = 0; i < candidates.length; i++) candidates[i] = atoms.get(i);
+        return candidates;
+    }
+
+    private static int[] append(int[] cube, int lit) {
+        int[] longer = Arrays.copyOf(cube, cube.length + 1);
+        longer[cube.length] = lit;
+        return longer;
+    }
+
+    /**
+     * Solves the cubes from..to, splitting the range in halves so idle workers can steal one.
+     */
+    private class Conquer extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<int[]> cubes;
+        private final int from;
+        private final int to;
+        private final ThreadLocal<DPLL> workerSolver;
+
+        Conquer(List<int[]> cubes, int from, int to, ThreadLocal<DPLL> workerSolver) {
+            this.cubes = cubes;
+            this.from = from;
+            this.to = to;
+            this.workerSolver = workerSolver;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Conquer(cubes, from, middle, workerSolver), new Conquer(cubes, middle, to, workerSolver));
+                return;
+            }
+            if (winner.get() != null || stopRequested) return;
+            DPLL dpll = workerSolver.get();
+            if (dpll.solve(cubes.get(from)) && winner.compareAndSet(null, dpll)) {
+                synchronized (solvers) {
+                    for (DPLL other : solvers) {
+                        if (other != dpll) other.stop();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,192 +1,1025 @@
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 /**
  * DPLL program of the peg solver.
  * The DPLL program takes as input the clauses generated by the front end and evaluates them.
+ *
+ * Literals are kept as primitive ints. Atom v is stored as code 2 * v for the positive literal and
+ * 2 * v + 1 for the negative one, so negating a literal is a single xor with 1. Clauses live back to
+ * back in one flat array and unit propagation uses two watched literals per clause, so assigning a
+ * literal only visits the clauses that currently watch its negation.
+ *
+ * Two search modes are available. The classic mode flips the latest untried decision on every conflict.
+ * It can also set pure literals, those whose negation is left in no open input clause, before deciding.
+ * Occurrence counts of the literals in open clauses are then kept up to date on every assignment, so
+ * pure literals are found without scanning the clauses. The CDCL mode analyses each conflict down to its
+ * first unique implication point, learns the resulting clause, jumps back to the level where that clause
+ * becomes unit and restarts on a Luby schedule.
+ *
+ * Decisions come from a pluggable BranchingHeuristic, by default Jeroslow-Wang for the classic
+ * mode and VSIDS for the CDCL mode, whose activities only mean something once clauses are learned.
+ * Decisions use phase saving: a decided atom takes the value it last had before backtracking undid
+ * it, true the first time.
+ *
+ * The solver is incremental. Clauses can be added between calls to solve, which takes assumption
+ * literals that hold for that call only. Learned clauses, activities and saved phases carry over
+ * from one call to the next.
+ *
+ * For portfolio use, a solver can be diversified with a random seed and a restart policy, stopped from
+ * another thread, and connected to a ClauseExchange through which it shares its short learned clauses.
+ *
+ * The search is instrumented through a SolverStats, which counts decisions, propagations, conflicts and
+ * backtracks and records the time spent parsing and solving.
  */
-public class DPLL {
-    private Set<String> atoms = new HashSet<>();
-    private List<String> atomList = new ArrayList<>();
-    private Set<String> literals = new HashSet<>();
-    private LinkedList<Set<String>> clauses = new LinkedList<>();
-    private Map<String, Integer> assignments = new HashMap<>();
+public class DPLL implements ClauseSink {
+    private static final int UNASSIGNED = -1;
+    private static final int RESTART_BASE = 100;
+    private static final int RANDOM_DECISION_ONE_IN = 50;
+
+    private boolean cdcl;
+    private BranchingHeuristic heuristic;
+    private boolean lubyRestarts = true;
+    private Random random;
+    private volatile boolean stopRequested;
+    // Whether the last solve gave up on a stop request instead of finishing.
+    private boolean interrupted;
+    // Portfolio clause sharing: the exchange, this solver's id in it and how far it has read.
+    private ClauseExchange exchange;
+    private int exchangeId;
+    private long exchangeCursor;
+    private SolverStats stats = new SolverStats();
+
+    private int numVars;
+    private boolean[] atoms = new boolean[1];
+
+    // Clause database: clause c occupies arena[clauseStart[c] .. clauseStart[c] + clauseSize[c]).
+    // The first two literals of a clause are the ones being watched.
+    private int[] arena = new int[1024];
+    private int arenaSize;
+    private int[] clauseStart = new int[256];
+    private int[] clauseSize = new int[256];
+    private int numClauses;
+    private boolean emptyClause;
+    // Learned clauses are stored with the input ones and flagged, their LBD decides which ones survive a reduction.
+    private boolean[] clauseLearned = new boolean[256];
+    private int[] clauseLbd = new int[256];
+    private int numLearned;
+    private int maxLearned;
+
+    // watches[code] lists the clauses watching literal code, watchCount[code] of them are in use.
+    private int[][] watches = new int[2][];
+    private int[] watchCount = new int[2];
+
+    // Current partial assignment, indexed by atom: -1 unassigned, 0 false, 1 true.
+    private int[] values = new int[1];
+    // Assignment found by the last successful solve, indexed by atom.
+    private int[] model = new int[1];
+    // Literal codes assumed by the current solve, decided one per level before any other decision.
+    private int[] assumptions = new int[0];
+    // Value each atom had when it was last unassigned, used as the polarity of the next decision on it.
+    private int[] savedPhase = new int[1];
+    // Assigned literal codes in assignment order, propagation works through it from qhead.
+    private int[] trail = new int[1];
+    private int trailSize;
+    private int qhead;
+    // trailLim[l] is the trail position where decision level l starts, its first entry is the decision.
+    // flipped[l] tells whether the decision of level l already had its opposite value tried.
+    private int[] trailLim = new int[1];
+    private boolean[] flipped = new boolean[1];
+    private int decisionLevel;
+    // Decision level of each assigned atom, and the clause that forced it (-1 for decisions and level 0 facts).
+    private int[] level = new int[1];
+    private int[] reason = new int[1];
+
+    // Pure literal elimination in the classic mode. occurrences[code] lists the input clauses containing
+    // the literal, openCount[code] counts those with no true literal and trueCount[c] the true literals of
+    // clause c. Literals that may have become pure wait in pureQueue. Null when not in use.
+    private boolean pureLiterals;
+    private int[][] occurrences;
+    private int[] openCount;
+    private int[] trueCount;
+    private int[] pureQueue;
+    private int pureQueueSize;
+    private boolean[] pureQueued;
+
+    // Conflict analysis scratch space.
+    private boolean[] seen = new boolean[1];
+    private int[] learnt = new int[1];
+    private int[] levelStamp = new int[1];
+    private int stamp;
 
     public DPLL() {
 
     }
 
+    /*
+     * Selects conflict-driven clause learning instead of classic chronological backtracking.
+     */
+    public void setCdcl(boolean cdcl) {
+        this.cdcl = cdcl;
+    }
+
+    /*
+     * Replaces the decision heuristic. Must be called before any clause is added.
+     */
+    public void setHeuristic(BranchingHeuristic heuristic) {
+        this.heuristic = heuristic;
+    }
+
+    /*
+     * Turns pure literal elimination in the classic mode on or off (the default). Keeping the occurrence
+     * counts costs a visit of every clause an assigned literal satisfies, which the peg encodings, with
+     * hardly any pure literals, do not pay back.
+     */
+    public void setPureLiterals(boolean pureLiterals) {
+        this.pureLiterals = pureLiterals;
+    }
+
+    /*
+     * Chooses Luby restarts (the default) or geometric ones, 100 conflicts growing by half each time.
+     */
+    public void setLubyRestarts(boolean lubyRestarts) {
+        this.lubyRestarts = lubyRestarts;
+    }
+
+    /*
+     * Diversifies the search: atoms get a random initial phase and one decision in 50 picks a random atom.
+     * Must be called before any clause is added.
+     */
+    public void setSeed(long seed) {
+        random = new Random(seed);
+    }
+
+    /*
+     * Shares learned clauses of at most exchange.getMaxSize() literals through the exchange, and takes in
+     * those of the other solvers at every restart.
+     */
+    public void setClauseExchange(ClauseExchange exchange, int id) {
+        this.exchange = exchange;
+        this.exchangeId = id;
+    }
+
+    /*
+     * Asks a running solve to give up as soon as possible. Safe to call from any thread.
+     * A stopped solve returns false without meaning that the clauses are unsatisfiable.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    public boolean isStopped() {
+        return stopRequested;
+    }
+
+    /*
+     * Whether the last solve returned false because it was stopped. A stop that comes after the search
+     * has finished leaves the answer standing.
+     */
+    public boolean isInterrupted() {
+        return interrupted;
+    }
+
+    /*
+     * Counters and phase timings of this solver, they add up over every solve.
+     */
+    public SolverStats getStats() {
+        return stats;
+    }
+
+    /*
+     * Replaces the stats this solver counts into, e.g. with the ones of a whole pipeline run.
+     */
+    public void setStats(SolverStats stats) {
+        this.stats = stats;
+    }
+
+    /*
+     * The decision heuristic, created on first use with the default for the selected mode.
+     */
+    private BranchingHeuristic heuristic() {
+        if (heuristic == null) heuristic = cdcl ? new VsidsHeuristic() : new JeroslowWangHeuristic();
+        return heuristic;
+    }
+
     /*
      * Reads the input, evaluates atoms and write to output.
+     * The input is memory-mapped and parsed without a String per token. The symbol section after the
+     * clauses is not held in memory, it is copied from the input file to the output file as it is.
      */
     public void dp(String input) throws IOException {
-        File inputFile = new File(input);
-        BufferedReader bf = new BufferedReader(new FileReader(inputFile));
-        File outputFile = new File(input + "_DPLL_output");
-        BufferedWriter bw = new BufferedWriter(new FileWriter(outputFile));
-        String line = "";
-        String reproduction = "";
-        boolean isClause = true;
-        while ((line = bf.readLine()) != null) {
-            if (line.equals("0")) isClause = false;
-            if (isClause) {
-                String[] clause = line.split("\\s");
-                Set<String> s = new HashSet<>();
-                for (String c : clause) {
-                    if (c.length() == 0) continue;
-                    s.add(c);
-                    literals.add(c);
-                    if (c.charAt(0) == '-') {
-                        atoms.add(c.substring(1));
-                        assignments.put(c.substring(1), -1);
-                    } else {
-                        atoms.add(c);
-                        assignments.put(c, -1);
-                    }
-                }
-                clauses.add(s);
-            } else {
-                reproduction += (line + "\n"); // Lines after 0 will be ignored and reproduced.
+        long started = System.nanoTime();
+        long symbolsStart;
+        try (Dimacs.Input buf = Dimacs.open(input)) {
+            symbolsStart = Dimacs.parseLines(buf, this); // Lines after 0 will be ignored and reproduced.
+            if (heuristic().usesSymbols()) {
+                Cnf symbols = new Cnf();
+                Dimacs.parseSymbols(buf, symbolsStart, symbols);
+                passSymbols(symbols);
             }
         }
-        atomList = new ArrayList<>(atoms);
-        Collections.sort(atomList);
-        boolean satisfied = dp1(clauses, assignments);
+        stats.addTime(SolverStats.Phase.PARSE, System.nanoTime() - started);
+        boolean satisfied = solve();
         // If can be satisfied, write evaluation to output.
         // Contents after 0, including 0, will be reproduced after the evaluation.
+        try (FileInputStream in = new FileInputStream(input);
+             FileOutputStream fos = new FileOutputStream(input + "_DPLL_output")) {
+            Dimacs.Out out = new Dimacs.Out(fos);
+            if (satisfied) writeModel(out);
+            out.flush();
+            FileChannel source = in.getChannel();
+            long position = symbolsStart;
+            while (position < source.size()) {
+                position += source.transferTo(position, source.size() - position, fos.getChannel());
+            }
+        }
+    }
+
+    /*
+     * Adds every clause of an in-memory formula and passes its symbols to the heuristic.
+     */
+    public void addClauses(Cnf cnf) {
+        int[] literals = cnf.getLiterals();
+        for (int i = 0; i < cnf.getNumClauses(); i++) {
+            addClause(literals, cnf.clauseStart(i), cnf.clauseEnd(i) - cnf.clauseStart(i));
+        }
+        passSymbols(cnf);
+    }
+
+    /*
+     * Passes the symbols of cnf to the heuristic, for clauses that were added one by one, e.g. streamed
+     * in by the front end.
+     */
+    public void passSymbols(Cnf cnf) {
+        if (!heuristic().usesSymbols()) return;
+        List<String> symbols = cnf.getSymbols();
+        for (int atom = 1; atom < symbols.size(); atom++) {
+            if (symbols.get(atom) != null) heuristic().onSymbol(atom, symbols.get(atom));
+        }
+    }
+
+    /*
+     * Writes the same output as dp would for an in-memory formula: the model if satisfied is true,
+     * then the line 0 and the symbol table.
+     */
+    public void writeOutput(Cnf cnf, boolean satisfied, String output) throws IOException {
+        try (Dimacs.Out out = new Dimacs.Out(output)) {
+            if (satisfied) writeModel(out);
+            out.writeAscii("0\n");
+            List<String> symbols = cnf.getSymbols();
+            for (int atom = 1; atom < symbols.size(); atom++) {
+                if (symbols.get(atom) == null) continue;
+                out.writeInt(atom).writeByte(' ').writeAscii(symbols.get(atom)).writeByte('\n');
+            }
+        }
+    }
+
+    /*
+     * One "atom T" or "atom F" line per atom of the last model.
+     */
+    private void writeModel(Dimacs.Out out) throws IOException {
+        for (int v = 1; v <= numVars; v++) {
+            if (model[v] == UNASSIGNED) continue;
+            out.writeInt(v).writeAscii(model[v] == 1 ? " T\n" : " F\n");
+        }
+    }
+
+    /*
+     * Writes the result in the usual SAT competition form: an "s" status line, then the model as
+     * "v" lines of signed atoms ending with 0.
+     */
+    public void writeCompetitionOutput(boolean satisfied, OutputStream stream) throws IOException {
+        Dimacs.Out out = new Dimacs.Out(stream);
+        out.writeAscii(satisfied ? "s SATISFIABLE\n" : "s UNSATISFIABLE\n");
         if (satisfied) {
-            List<String> atomsList = new ArrayList<>(atoms);
-            Collections.sort(atomsList, Comparator.comparingInt((String s) -> Integer.parseInt(s)));
-            for (String a : atomsList) {
-                String val = assignments.get(a) == 1 ? "T" : "F";
-                bw.write(a + " " + val);
-                bw.newLine();
+            out.writeAscii("v");
+            for (int v = 1; v <= numVars; v++) {
+                if (model[v] == UNASSIGNED) continue;
+                out.writeByte(' ').writeInt(model[v] == 1 ? v : -v);
             }
+            out.writeAscii(" 0\n");
+        }
+        out.flush();
+    }
+
+    /*
+     * Solves the clauses added so far with the given signed atom numbers assumed true.
+     * Returns true if a model exists, it can then be read with modelValue. A false result caused by the
+     * assumptions leaves the solver usable; without assumptions it means the clauses are unsatisfiable.
+     */
+    public boolean solve(int... assumed) {
+        long started = System.nanoTime();
+        try {
+            return search(assumed);
+        } finally {
+            stats.addTime(SolverStats.Phase.SOLVE, System.nanoTime() - started);
+        }
+    }
+
+    private boolean search(int[] assumed) {
+        interrupted = false;
+        cancelUntil(0);
+        if (emptyClause) return false;
+        if (propagate() != -1) {
+            emptyClause = true;
+            return false;
+        }
+        assumptions = new int[assumed.length];
+        for (int i = 0; i < assumed.length; i++) {
+            ensureVars(Math.abs(assumed[i]));
+            assumptions[i] = toCode(assumed[i]);
+        }
+        // Indexed once the assumed atoms are known, and again when atoms were added since.
+        if (cdcl || !pureLiterals) {
+            occurrences = null;
+        } else if (occurrences == null || occurrences.length < 2 * (numVars + 1)) {
+            indexOccurrences();
+        }
+        // Assumptions that already hold get empty levels, so there can be more levels than atoms.
+        int maxLevels = numVars + assumptions.length + 1;
+        if (trailLim.length < maxLevels) {
+            trailLim = Arrays.copyOf(trailLim, maxLevels);
+            flipped = Arrays.copyOf(flipped, maxLevels);
+            levelStamp = Arrays.copyOf(levelStamp, maxLevels);
+        }
+        boolean satisfied = cdcl ? cdcl() : dp1();
+        if (satisfied) {
+            if (model.length < values.length) model = new int[values.length];
+            System.arraycopy(values, 0, model, 0, values.length);
+        } else if (assumptions.length == 0 && !interrupted) {
+            emptyClause = true;
         }
-        bw.write(reproduction);
-        bw.close();
+        cancelUntil(0);
+        return satisfied;
+    }
+
+    /*
+     * Value of an atom in the last model found: 1 true, 0 false, -1 if the atom is not in any clause.
+     */
+    public int modelValue(int atom) {
+        if (atom > numVars) return UNASSIGNED;
+        return model[atom];
+    }
+
+    /*
+     * Overrides the value of an atom in the last model, e.g. to extend a model of a preprocessed formula
+     * to the atoms the preprocessor removed.
+     */
+    public void setModelValue(int atom, int value) {
+        ensureVars(atom);
+        model[atom] = value;
+    }
+
+    /*
+     * Failed literal probing: assumes the signed atom at a fresh decision level, propagates and undoes it.
+     * Returns false if propagation runs into a conflict, the literal can then never be true.
+     */
+    public boolean probe(int lit) {
+        cancelUntil(0);
+        if (emptyClause) return false;
+        if (propagate() != -1) {
+            emptyClause = true;
+            return false;
+        }
+        ensureVars(Math.abs(lit));
+        int code = toCode(lit);
+        if (litValue(code) != UNASSIGNED) return litValue(code) == 1;
+        heuristic();
+        newDecisionLevel(true);
+        assign(code, -1);
+        boolean consistent = propagate() == -1;
+        cancelUntil(0);
+        return consistent;
+    }
+
+    /*
+     * Lookahead of cube and conquer: assumes the signed atoms one per decision level, propagating after
+     * each, then undoes them. Returns the number of atoms assigned with all of them in place, or -1 if
+     * they run into a conflict.
+     */
+    public int lookahead(int... lits) {
+        cancelUntil(0);
+        if (emptyClause) return -1;
+        if (propagate() != -1) {
+            emptyClause = true;
+            return -1;
+        }
+        heuristic();
+        for (int lit : lits) {
+            ensureVars(Math.abs(lit));
+            int code = toCode(lit);
+            if (litValue(code) == 1) continue;
+            if (litValue(code) == 0) {
+                cancelUntil(0);
+                return -1;
+            }
+            newDecisionLevel(true);
+            assign(code, -1);
+            if (propagate() != -1) {
+                cancelUntil(0);
+                return -1;
+            }
+        }
+        int assigned = trailSize;
+        cancelUntil(0);
+        return assigned;
+    }
+
+    /*
+     * Adds a clause given as signed atom numbers.
+     */
+    public void addClause(int... lits) {
+        addClause(lits, 0, lits.length);
+    }
+
+    /*
+     * Adds a clause made of the first size entries of lits.
+     */
+    public void addClause(int[] lits, int size) {
+        addClause(lits, 0, size);
+    }
+
+    /*
+     * Adds a clause given as signed atom numbers in lits[offset .. offset + size).
+     * Duplicate literals are dropped and tautologies are ignored. Literals already fixed at level 0
+     * are taken into account, so clauses can be added at any point between two solves.
+     */
+    @Override
+    public void addClause(int[] lits, int offset, int size) {
+        addClause(lits, offset, size, false);
+    }
+
+    /*
+     * Adds an input clause, or a learned one which is not reported to the heuristic and may be dropped
+     * when the learned clauses are reduced.
+     */
+    private void addClause(int[] lits, int offset, int size, boolean learned) {
+        cancelUntil(0);
+        occurrences = null; // Indexed again by the next solve.
+        int start = arenaSize;
+        ensureArena(arenaSize + size);
+        int kept = 0;
+        // Every atom is registered, even if the clause turns out to be satisfied already.
+        for (int i = offset; i < offset + size; i++) {
+            int v = Math.abs(lits[i]);
+            ensureVars(v);
+            if (!atoms[v]) {
+                atoms[v] = true;
+                if (random != null) savedPhase[v] = random.nextInt(2);
+                heuristic().addAtom(v);
+            }
+        }
+        for (int i = offset; i < offset + size; i++) {
+            int code = toCode(lits[i]);
+            if (litValue(code) == 1) return; // Satisfied at level 0.
+            if (litValue(code) == 0) continue; // False at level 0, drop the literal.
+            boolean duplicate = false;
+            for (int j = start; j < start + kept; j++) {
+                if (arena[j] == code) duplicate = true;
+                if (arena[j] == (code ^ 1)) return; // Tautology, always satisfied.
+            }
+            if (!duplicate) arena[start + kept++] = code;
+        }
+        if (kept == 0) {
+            emptyClause = true;
+            return;
+        }
+        if (!learned) heuristic().onClause(arena, start, kept);
+        if (kept == 1) {
+            // Unit clauses are not stored, they are assigned right away.
+            assign(arena[start], -1);
+            return;
+        }
+        storeClause(start, kept, learned, learned ? kept : 0);
+        if (learned) numLearned++;
+    }
+
+    /*
+     * Registers the size literals already placed at arena[start] as a clause and watches its first two.
+     */
+    private int storeClause(int start, int size, boolean learned, int lbd) {
+        if (numClauses == clauseStart.length) {
+            int capacity = numClauses * 2;
+            clauseStart = Arrays.copyOf(clauseStart, capacity);
+            clauseSize = Arrays.copyOf(clauseSize, capacity);
+            clauseLearned = Arrays.copyOf(clauseLearned, capacity);
+            clauseLbd = Arrays.copyOf(clauseLbd, capacity);
+        }
+        int c = numClauses++;
+        clauseStart[c] = start;
+        clauseSize[c] = size;
+        clauseLearned[c] = learned;
+        clauseLbd[c] = lbd;
+        arenaSize = start + size;
+        watch(arena[start], c);
+        watch(arena[start + 1], c);
+        return c;
     }
 
     /*
      * Evaluates atoms.
+     * The search runs in place: every assignment is recorded on the trail, and backtracking pops the
+     * trail back to the start of the decision level being retried. No state is copied per branch.
+     */
+    private boolean dp1() {
+        while (true) {
+            if (stopRequested) {
+                interrupted = true;
+                return false;
+            }
+            // Pure literal elimination: a pure literal can be set true without losing any model, so it
+            // gets a level of its own that is never flipped. Assumptions go first.
+            int pure = occurrences != null && decisionLevel >= assumptions.length ? nextPureLiteral() : -1;
+            if (pure != -1) {
+                newDecisionLevel(true);
+                assign(pure, -1);
+                stats.pureLiterals++;
+                if (propagate() != -1) throw new IllegalStateException("Pure literal caused a conflict");
+                continue;
+            }
+            // Hard case: Pick some atom and try each assignment in turn.
+            int decision = nextDecision();
+            // Success: every atom has a value and no clause is falsified.
+            if (decision == -1) return true;
+            // Failure: an assumption is contradicted by the others.
+            if (decision == -2) return false;
+            // Try the saved phase of the picked atom first. Assumptions are never flipped.
+            newDecisionLevel(decisionLevel < assumptions.length);
+            assign(decision, -1);
+            stats.decisions++;
+            int confl;
+            while ((confl = propagate()) != -1) {
+                stats.conflicts++;
+                heuristic.onConflict(arena, clauseStart[confl], clauseSize[confl]);
+                // Failure: go back to the latest decision whose other value has not been tried yet.
+                int back = decisionLevel;
+                while (back > 0 && flipped[back]) back--;
+                if (back == 0) return false;
+                decision = trail[trailLim[back]];
+                cancelUntil(back);
+                undo(trailLim[back]);
+                flipped[back] = true;
+                assign(decision ^ 1, -1);
+                stats.backtracks++;
+            }
+        }
+    }
+
+    /*
+     * Evaluates atoms with conflict-driven clause learning.
+     * Each conflict is analysed into a learned clause, the search jumps back to the second highest
+     * level of that clause and lets propagation assert it. Restarts follow the Luby sequence, or a
+     * geometric one, and are where clauses shared by other solvers are taken in.
      */
-    public boolean dp1(LinkedList<Set<String>> clauseSet, Map<String, Integer> atomValues) {
+    private boolean cdcl() {
+        maxLearned = Math.max(numClauses / 3, 2000);
+        int restarts = 0;
+        int conflictsUntilRestart = RESTART_BASE;
         while (true) {
-            // Success: All clauses are satisfied, unbounded atoms are assigned to be true by default.
-            if (clauseSet.isEmpty()) {
-                for (String atom : atoms) {
-                    if (atomValues.get(atom) == -1) {
-                        atomValues.put(atom, 1);
+            if (stopRequested) {
+                interrupted = true;
+                return false;
+            }
+            int confl = propagate();
+            if (confl != -1) {
+                // Failure at level 0: the formula is unsatisfiable, whatever the assumptions.
+                if (decisionLevel == 0) {
+                    emptyClause = true;
+                    return false;
+                }
+                stats.conflicts++;
+                conflictsUntilRestart--;
+                int size = analyze(confl);
+                heuristic.onConflict(learnt, 0, size);
+                int back = 0;
+                for (int k = 2; k < size; k++) {
+                    if (level[learnt[k] >> 1] > level[learnt[1] >> 1]) {
+                        int tmp = learnt[1];
+                        learnt[1] = learnt[k];
+                        learnt[k] = tmp;
                     }
                 }
-                assignments = atomValues;
-                return true;
+                if (size > 1) back = level[learnt[1] >> 1];
+                cancelUntil(back);
+                stats.backtracks++;
+                stats.learnedClauses++;
+                if (size == 1) {
+                    assign(learnt[0], -1);
+                } else {
+                    int start = arenaSize;
+                    ensureArena(start + size);
+                    System.arraycopy(learnt, 0, arena, start, size);
+                    int c = storeClause(start, size, true, computeLbd(size));
+                    numLearned++;
+                    assign(learnt[0], c);
+                }
+                if (exchange != null && size <= exchange.getMaxSize()) share(size);
+                continue;
             }
+            if (conflictsUntilRestart <= 0) {
+                cancelUntil(0);
+                restarts++;
+                stats.restarts++;
+                conflictsUntilRestart = lubyRestarts ? RESTART_BASE * luby(restarts) : (int) (RESTART_BASE * Math.pow(1.5, restarts));
+                if (exchange != null) {
+                    exchangeCursor = exchange.drain(exchangeId, exchangeCursor, (lits, offset, size) -> addClause(lits, offset, size, true));
+                    if (emptyClause) return false;
+                }
+                if (numLearned >= maxLearned) {
+                    reduceLearned();
+                    maxLearned += maxLearned / 10;
+                }
+                continue;
+            }
+            int decision = nextDecision();
+            // Success: every atom has a value and no clause is falsified.
+            if (decision == -1) return true;
+            // Failure: an assumption is contradicted by the others.
+            if (decision == -2) return false;
+            newDecisionLevel(false);
+            assign(decision, -1);
+            stats.decisions++;
+        }
+    }
 
-            // Failure: Some clause is unsatisfiable.
-            for (Set<String> clause : clauseSet) {
-                if (clause.isEmpty()) {
-                    return false;
+    /*
+     * Publishes the learned clause of the given size to the exchange as signed atoms.
+     */
+    private void share(int size) {
+        int[] lits = new int[size];
+        for (int k = 0; k < size; k++) lits[k] = (learnt[k] & 1) == 0 ? learnt[k] >> 1 : -(learnt[k] >> 1);
+        exchange.publish(exchangeId, lits, size);
+    }
+
+    /*
+     * Literal code of the next decision. The assumptions come first, one per level, an assumption that
+     * already holds gets an empty level of its own. Then the heuristic picks an atom, decided with its
+     * saved phase. Returns -1 when every atom has a value and -2 when an assumption is already false.
+     */
+    private int nextDecision() {
+        while (decisionLevel < assumptions.length) {
+            int p = assumptions[decisionLevel];
+            int val = litValue(p);
+            if (val == 0) return -2;
+            if (val == UNASSIGNED) return p;
+            newDecisionLevel(true);
+        }
+        if (random != null && numVars > 0 && random.nextInt(RANDOM_DECISION_ONE_IN) == 0) {
+            int v = 1 + random.nextInt(numVars);
+            if (atoms[v] && values[v] == UNASSIGNED) return decisionLiteral(v);
+        }
+        int pick = heuristic().pick(values);
+        if (pick == 0) return -1;
+        return decisionLiteral(pick);
+    }
+
+    /*
+     * First-UIP conflict analysis. Resolves the conflicting clause with the reasons of the current
+     * level's literals, newest first, until one literal of the current level remains.
+     * The learned clause is left in learnt with the asserting literal first, its size is returned.
+     */
+    private int analyze(int confl) {
+        int size = 1;
+        int pathCount = 0;
+        int p = -1;
+        int index = trailSize - 1;
+        do {
+            int start = clauseStart[confl];
+            int end = start + clauseSize[confl];
+            // A reason clause holds the literal it implied first, that literal is p itself.
+            for (int k = p == -1 ? start : start + 1; k < end; k++) {
+                int q = arena[k];
+                int v = q >> 1;
+                if (seen[v] || level[v] == 0) continue;
+                seen[v] = true;
+                if (level[v] >= decisionLevel) {
+                    pathCount++;
+                } else {
+                    learnt[size++] = q;
                 }
             }
+            while (!seen[trail[index] >> 1]) index--;
+            p = trail[index--];
+            confl = reason[p >> 1];
+            seen[p >> 1] = false;
+            pathCount--;
+        } while (pathCount > 0);
+        learnt[0] = p ^ 1;
+        for (int k = 1; k < size; k++) seen[learnt[k] >> 1] = false;
+        return size;
+    }
 
-            // Pure literal elimination.
-            boolean literalElimination = false;
-            Set<String> curLiterals = new HashSet<>();
-            for (Set<String> clause : clauseSet) {
-                for (String l : clause) curLiterals.add(l);
-            }
-            literals = curLiterals;
-            for (String l : literals) {
-                String negation = l.charAt(0) == '-' ? l.substring(1) : ("-" + l);
-                if ((atomValues.containsKey(l) && atomValues.get(l) != -1) || (atomValues.containsKey(negation) && atomValues.get(negation) != -1)) continue;
-                if (!literals.contains(negation)) {
-                    literalElimination = true;
-                    obviousAssign(l, atomValues);
-                    Iterator<Set<String>> iter = clauseSet.iterator();
-                    while (iter.hasNext()) {
-                        Set<String> clause = iter.next();
-                        if (clause.contains(l)) {
-                            iter.remove();
-                        }
+    /*
+     * Literal block distance: the number of distinct decision levels in the learned clause.
+     */
+    private int computeLbd(int size) {
+        stamp++;
+        int lbd = 0;
+        for (int k = 0; k < size; k++) {
+            int l = level[learnt[k] >> 1];
+            if (levelStamp[l] != stamp) {
+                levelStamp[l] = stamp;
+                lbd++;
+            }
+        }
+        return lbd;
+    }
+
+    /*
+     * Drops the worse half of the learned clauses, judged by LBD. Clauses with LBD 2 or less are kept.
+     * Only called at level 0, where no surviving clause is the reason of anything the analysis looks at,
+     * so the arena can be compacted and the watches rebuilt from the first two literals of each clause.
+     */
+    private void reduceLearned() {
+        long[] candidates = new long[numLearned];
+        int n = 0;
+        for (int c = 0; c < numClauses; c++) {
+            if (clauseLearned[c] && clauseLbd[c] > 2) candidates[n++] = ((long) clauseLbd[c] << 32) | c;
+        }
+        Arrays.sort(candidates, 0, n);
+        boolean[] removed = new boolean[numClauses];
+        for (int k = n - 1; k >= n / 2; k--) removed[(int) candidates[k]] = true;
+        int kept = 0;
+        int pos = 0;
+        for (int c = 0; c < numClauses; c++) {
+            if (removed[c]) {
+                numLearned--;
+                continue;
+            }
+            int start = clauseStart[c];
+            int size = clauseSize[c];
+            System.arraycopy(arena, start, arena, pos, size);
+            clauseStart[kept] = pos;
+            clauseSize[kept] = size;
+            clauseLearned[kept] = clauseLearned[c];
+            clauseLbd[kept] = clauseLbd[c];
+            pos += size;
+            kept++;
+        }
+        numClauses = kept;
+        arenaSize = pos;
+        occurrences = null;
+        Arrays.fill(watchCount, 0);
+        for (int c = 0; c < numClauses; c++) {
+            watch(arena[clauseStart[c]], c);
+            watch(arena[clauseStart[c] + 1], c);
+        }
+        for (int k = 0; k < trailSize; k++) reason[trail[k] >> 1] = -1;
+    }
+
+    /*
+     * Luby restart sequence 1, 1, 2, 1, 1, 2, 4, 1, ... indexed from 0.
+     */
+    private static int luby(int i) {
+        int size = 1;
+        int seq = 0;
+        while (size < i + 1) {
+            seq++;
+            size = 2 * size + 1;
+        }
+        while (size - 1 != i) {
+            size = (size - 1) >> 1;
+            seq--;
+            i = i % size;
+        }
+        return 1 << seq;
+    }
+
+    /*
+     * Literal code to decide for an atom, following its saved phase.
+     */
+    private int decisionLiteral(int atom) {
+        return savedPhase[atom] == 0 ? 2 * atom + 1 : 2 * atom;
+    }
+
+    /*
+     * Opens a new decision level starting at the current end of the trail.
+     */
+    private void newDecisionLevel(boolean isFlipped) {
+        decisionLevel++;
+        if (decisionLevel > stats.maxDepth) stats.maxDepth = decisionLevel;
+        trailLim[decisionLevel] = trailSize;
+        flipped[decisionLevel] = isFlipped;
+    }
+
+    /*
+     * Unit propagation over the watched literals of every literal on the trail not yet processed.
+     * Returns the index of a falsified clause, or -1 if there is no conflict.
+     */
+    public int propagate() {
+        while (qhead < trailSize) {
+            int falseLit = trail[qhead++] ^ 1;
+            int[] ws = watches[falseLit];
+            int n = watchCount[falseLit];
+            int i = 0;
+            int j = 0;
+            while (i < n) {
+                int c = ws[i++];
+                int start = clauseStart[c];
+                // Make sure the false literal is the second watch.
+                if (arena[start] == falseLit) {
+                    arena[start] = arena[start + 1];
+                    arena[start + 1] = falseLit;
+                }
+                int first = arena[start];
+                if (litValue(first) == 1) {
+                    ws[j++] = c; // Clause already satisfied, keep watching.
+                    continue;
+                }
+                // Look for a literal that is not false to watch instead.
+                int end = start + clauseSize[c];
+                boolean moved = false;
+                for (int k = start + 2; k < end; k++) {
+                    int code = arena[k];
+                    if (litValue(code) != 0) {
+                        arena[start + 1] = code;
+                        arena[k] = falseLit;
+                        watch(code, c);
+                        moved = true;
+                        break;
                     }
-                    break;
                 }
+                if (moved) continue;
+                ws[j++] = c;
+                if (litValue(first) == 0) {
+                    // Failure: every literal of the clause is false.
+                    while (i < n) ws[j++] = ws[i++];
+                    watchCount[falseLit] = j;
+                    qhead = trailSize;
+                    return c;
+                }
+                // Forced assignment: the clause became unit.
+                assign(first, c);
+                stats.propagations++;
             }
-            if (literalElimination) continue;
-
-            // Forced assignment.
-            boolean forcedAssignment = false;
-            String l = "";
-            for (Set<String> clause : clauseSet) {
-                if (clause.size() == 1) {
-                    List<String> temp = new ArrayList<>(clause);
-                    l = temp.get(0);
-                    forcedAssignment = true;
-                    break;
+            watchCount[falseLit] = j;
+        }
+        return -1;
+    }
+
+    /*
+     * Sets the literal code to true at the current decision level and records it on the trail.
+     */
+    private void assign(int code, int from) {
+        int v = code >> 1;
+        values[v] = (code & 1) == 0 ? 1 : 0;
+        level[v] = decisionLevel;
+        reason[v] = from;
+        trail[trailSize++] = code;
+        if (occurrences != null) {
+            // Clauses satisfied by this literal no longer count for the occurrences of their literals.
+            for (int c : occurrences[code]) {
+                if (trueCount[c]++ != 0) continue;
+                for (int k = clauseStart[c]; k < clauseStart[c] + clauseSize[c]; k++) {
+                    if (--openCount[arena[k]] == 0) queuePure(arena[k] ^ 1);
                 }
             }
-            if (forcedAssignment) {
-                obviousAssign(l, atomValues);
-                propagate(l, clauseSet, atomValues);
-                continue;
+        }
+    }
+
+    /*
+     * Pops every decision level above the given one.
+     */
+    private void cancelUntil(int target) {
+        if (decisionLevel <= target) return;
+        undo(trailLim[target + 1]);
+        decisionLevel = target;
+    }
+
+    /*
+     * Unassigns every literal recorded on the trail after position mark.
+     */
+    private void undo(int mark) {
+        while (trailSize > mark) {
+            int code = trail[--trailSize];
+            int v = code >> 1;
+            savedPhase[v] = values[v];
+            values[v] = UNASSIGNED;
+            heuristic.onUnassign(v);
+            if (occurrences != null) {
+                for (int c : occurrences[code]) {
+                    if (--trueCount[c] != 0) continue;
+                    for (int k = clauseStart[c]; k < clauseStart[c] + clauseSize[c]; k++) openCount[arena[k]]++;
+                }
+                queuePure(2 * v);
+                queuePure(2 * v + 1);
             }
+        }
+        qhead = mark;
+    }
 
-            // No easy cases found, exit loop.
-            break;
+    /*
+     * Builds the occurrence lists and counts of the input clauses under the current assignment and
+     * queues the literals that are pure already.
+     */
+    private void indexOccurrences() {
+        int numCodes = 2 * (numVars + 1);
+        int[] size = new int[numCodes];
+        for (int c = 0; c < numClauses; c++) {
+            if (clauseLearned[c]) continue;
+            for (int k = clauseStart[c]; k < clauseStart[c] + clauseSize[c]; k++) size[arena[k]]++;
         }
-        // Hard case: Pick some atom and try each assignment in turn.
-        String pick = "";
-        for (String a : atomList) {
-            if (atomValues.get(a) == -1) {
-                pick = a;
-                break;
+        int[][] lists = new int[numCodes][];
+        for (int code = 0; code < numCodes; code++) {
+            lists[code] = new int[size[code]];
+            size[code] = 0;
+        }
+        openCount = new int[numCodes];
+        trueCount = new int[numClauses];
+        for (int c = 0; c < numClauses; c++) {
+            if (clauseLearned[c]) continue;
+            int end = clauseStart[c] + clauseSize[c];
+            for (int k = clauseStart[c]; k < end; k++) {
+                lists[arena[k]][size[arena[k]]++] = c;
+                if (litValue(arena[k]) == 1) trueCount[c]++;
             }
+            if (trueCount[c] != 0) continue;
+            for (int k = clauseStart[c]; k < end; k++) openCount[arena[k]]++;
         }
-        if (pick.equals("")) return true;
-        // Try to assign value true to the picked atom.
-        atomValues.put(pick, 1);
-        LinkedList<Set<String>> clausesCopy = new LinkedList<>();
-        Map<String, Integer> atomValuesCopy = new HashMap<>(atomValues);
-        for (Set<String> clause : clauseSet) {
-            Set<String> clauseCopy = new HashSet<>(clause);
-            clausesCopy.add(clauseCopy);
+        pureQueue = new int[numCodes];
+        pureQueued = new boolean[numCodes];
+        pureQueueSize = 0;
+        occurrences = lists;
+        for (int v = 1; v <= numVars; v++) {
+            queuePure(2 * v);
+            queuePure(2 * v + 1);
         }
-        propagate(pick, clausesCopy, atomValuesCopy);
-        boolean firstTry = dp1(clausesCopy, atomValuesCopy);
-        if (firstTry) {
-            clauseSet = clausesCopy;
-            atomValues = atomValuesCopy;
-            return firstTry;
+    }
+
+    /*
+     * Queues a literal code if it is pure now: unassigned, in some open clause, its negation in none.
+     */
+    private void queuePure(int code) {
+        if (pureQueued[code] || openCount[code] == 0 || openCount[code ^ 1] != 0 || values[code >> 1] != UNASSIGNED) {
+            return;
         }
-        // Try to assign value false to the picked atom.
-        atomValues.put(pick, 0);
-        propagate(pick, clauseSet, atomValues);
-        boolean secondTry =  dp1(clauseSet, atomValues);
-        return secondTry;
+        pureQueued[code] = true;
+        pureQueue[pureQueueSize++] = code;
     }
 
-    public void propagate(String l, LinkedList<Set<String>> s, Map<String, Integer> m) {
-        String a = l.charAt(0) == '-' ? l.substring(1) : l;
-        String na = "-" + a;
-        Iterator<Set<String>> iter = s.iterator();
-        while (iter.hasNext()) {
-            Set<String> clause = iter.next();
-            if ((clause.contains(a) && m.get(a) == 1) || (clause.contains(na) && m.get(a) == 0)) {
-                iter.remove();
-            } else if (clause.contains(a) && m.get(a) == 0) {
-                clause.remove(a);
-            } else if (clause.contains(na) && m.get(a) == 1) {
-                clause.remove(na);
-            }
+    /*
+     * A pure literal from the queue, or -1 if there is none. Queued literals that stopped being pure
+     * since are dropped.
+     */
+    private int nextPureLiteral() {
+        while (pureQueueSize > 0) {
+            int code = pureQueue[--pureQueueSize];
+            pureQueued[code] = false;
+            if (values[code >> 1] == UNASSIGNED && openCount[code] > 0 && openCount[code ^ 1] == 0) return code;
         }
+        return -1;
+    }
+
+    /*
+     * Value of a literal code under the current assignment: -1 unassigned, 0 false, 1 true.
+     */
+    private int litValue(int code) {
+        int val = values[code >> 1];
+        if (val == UNASSIGNED) return UNASSIGNED;
+        return (code & 1) == 0 ? val : 1 - val;
     }
 
-    public void obviousAssign(String l, Map<String, Integer> m) {
-        if (l.charAt(0) == '-') {
-            m.put(l.substring(1), 0);
-        } else {
-            m.put(l, 1);
+    private void watch(int code, int c) {
+        if (watches[code] == null) {
+            watches[code] = new int[4];
+        } else if (watchCount[code] == watches[code].length) {
+            watches[code] = Arrays.copyOf(watches[code], watchCount[code] * 2);
         }
+        watches[code][watchCount[code]++] = c;
+    }
+
+    private void ensureVars(int v) {
+        if (v <= numVars) return;
+        if (v >= values.length) {
+            int capacity = Math.max(v + 1, values.length * 2);
+            int old = values.length;
+            values = Arrays.copyOf(values, capacity);
+            Arrays.fill(values, old, capacity, UNASSIGNED);
+            model = Arrays.copyOf(model, capacity);
+            Arrays.fill(model, old, capacity, UNASSIGNED);
+            savedPhase = Arrays.copyOf(savedPhase, capacity);
+            Arrays.fill(savedPhase, old, capacity, 1);
+            atoms = Arrays.copyOf(atoms, capacity);
+            trail = Arrays.copyOf(trail, capacity);
+            trailLim = Arrays.copyOf(trailLim, capacity);
+            flipped = Arrays.copyOf(flipped, capacity);
+            level = Arrays.copyOf(level, capacity);
+            reason = Arrays.copyOf(reason, capacity);
+            seen = Arrays.copyOf(seen, capacity);
+            learnt = Arrays.copyOf(learnt, capacity);
+            levelStamp = Arrays.copyOf(levelStamp, capacity);
+            watches = Arrays.copyOf(watches, 2 * capacity);
+            watchCount = Arrays.copyOf(watchCount, 2 * capacity);
+        }
+        numVars = v;
+    }
+
+    private void ensureArena(int size) {
+        if (size > arena.length) arena = Arrays.copyOf(arena, Math.max(size, arena.length * 2));
+    }
+
+    private static int toCode(int lit) {
+        return lit > 0 ? 2 * lit : -2 * lit + 1;
     }
-}
\ No newline at end of file
+}
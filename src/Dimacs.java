@@ -0,0 +1,330 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reader and writer for clause files.
+ * Two formats are supported. The standard DIMACS CNF format has a "p cnf atoms clauses" header and
+ * each clause ends with 0; comment lines of the form "c atom symbol" carry the symbol table. The front
+ * end's own format has one clause per line, a line "0" after the last clause, then "atom symbol" lines.
+ *
+ * Input is memory-mapped in windows of up to 2 GB, so files of any size can be read, and parsed byte
+ * by byte straight into ints, no String is created per token.
+ * Output is formatted into a byte buffer the same way.
+ */
+public class Dimacs {
+
+    private Dimacs() {
+
+    }
+
+    /*
+     * Opens a file for reading through memory-mapped windows.
+     */
+    public static Input open(String path) throws IOException {
+        return new Input(path, Integer.MAX_VALUE);
+    }
+
+    /*
+     * Reads a DIMACS CNF file, symbols included.
+     */
+    public static Cnf read(String path) throws IOException {
+        Cnf cnf = new Cnf();
+        try (Input buf = open(path)) {
+            parse(buf, cnf, cnf);
+        }
+        return cnf;
+    }
+
+    /*
+     * Parses DIMACS CNF from the whole of buf and hands every clause to sink.
+     * Symbols found in "c atom symbol" comments are stored in symbols, unless it is null.
+     */
+    public static void parse(Input buf, ClauseSink sink, Cnf symbols) throws IOException {
+        long pos = 0;
+        long end = buf.size();
+        int[] clause = new int[64];
+        int size = 0;
+        while (pos < end) {
+            byte b = buf.get(pos);
+            if (b == 'c') {
+                long eol = endOfLine(buf, pos, end);
+                if (symbols != null) readSymbol(buf, pos + 1, eol, symbols);
+                pos = eol + 1;
+            } else if (b == 'p') {
+                pos = endOfLine(buf, pos, end) + 1; // The header is only a size hint.
+            } else if (b == '%') {
+                break; // SATLIB files end with a "%" line.
+            } else if (b == '-' || (b >= '0' && b <= '9')) {
+                boolean negative = b == '-';
+                if (negative) pos++;
+                int value = 0;
+                while (pos < end && (b = buf.get(pos)) >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                    pos++;
+                }
+                if (value == 0) {
+                    sink.addClause(clause, 0, size);
+                    size = 0;
+                } else {
+                    if (size == clause.length) clause = Arrays.copyOf(clause, size * 2);
+                    clause[size++] = negative ? -value : value;
+                }
+            } else {
+                pos++;
+            }
+        }
+        if (size > 0) sink.addClause(clause, 0, size); // Tolerate a missing final 0.
+    }
+
+    /*
+     * Parses the front end's format from buf: one clause per line until a line "0".
+     * Returns the position where that line starts, so the symbol section can be copied as it is.
+     * Returns the size of buf if there is no such line.
+     */
+    public static long parseLines(Input buf, ClauseSink sink) throws IOException {
+        long pos = 0;
+        long end = buf.size();
+        int[] clause = new int[64];
+        while (pos < end) {
+            long lineStart = pos;
+            long eol = endOfLine(buf, pos, end);
+            int size = 0;
+            while (pos < eol) {
+                byte b = buf.get(pos);
+                if (b != '-' && (b < '0' || b > '9')) {
+                    pos++;
+                    continue;
+                }
+                boolean negative = b == '-';
+                if (negative) pos++;
+                int value = 0;
+                while (pos < eol && (b = buf.get(pos)) >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                    pos++;
+                }
+                if (size == clause.length) clause = Arrays.copyOf(clause, size * 2);
+                clause[size++] = negative ? -value : value;
+            }
+            if (size == 1 && clause[0] == 0) return lineStart;
+            sink.addClause(clause, 0, size);
+            pos = eol + 1;
+        }
+        return end;
+    }
+
+    /*
+     * Parses the "atom symbol" lines of the front end's format and stores them in symbols.
+     */
+    public static void parseSymbols(Input buf, long from, Cnf symbols) throws IOException {
+        long end = buf.size();
+        long pos = from;
+        while (pos < end) {
+            long eol = endOfLine(buf, pos, end);
+            readSymbol(buf, pos, eol, symbols);
+            pos = eol + 1;
+        }
+    }
+
+    /*
+     * Writes cnf in DIMACS CNF format, with the symbol table as "c atom symbol" comments.
+     */
+    public static void write(Cnf cnf, String output) throws IOException {
+        try (Out out = new Out(output)) {
+            out.writeAscii("p cnf ").writeInt(cnf.getNumVars()).writeByte(' ').writeInt(cnf.getNumClauses()).writeByte('\n');
+            int[] literals = cnf.getLiterals();
+            for (int i = 0; i < cnf.getNumClauses(); i++) {
+                for (int k = cnf.clauseStart(i); k < cnf.clauseEnd(i); k++) out.writeInt(literals[k]).writeByte(' ');
+                out.writeAscii("0\n");
+            }
+            writeSymbols(cnf, out, "c ");
+        }
+    }
+
+    /*
+     * Writes cnf in the front end's format read by DPLL.dp.
+     */
+    public static void writeLines(Cnf cnf, String output) throws IOException {
+        try (LineWriter writer = new LineWriter(output)) {
+            int[] literals = cnf.getLiterals();
+            for (int i = 0; i < cnf.getNumClauses(); i++) {
+                writer.addClause(literals, cnf.clauseStart(i), cnf.clauseEnd(i) - cnf.clauseStart(i));
+            }
+            writer.finish(cnf);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void writeSymbols(Cnf cnf, Out out, String prefix) throws IOException {
+        List<String> symbols = cnf.getSymbols();
+        for (int atom = 1; atom < symbols.size(); atom++) {
+            if (symbols.get(atom) == null) continue;
+            out.writeAscii(prefix).writeInt(atom).writeByte(' ').writeAscii(symbols.get(atom)).writeByte('\n');
+        }
+    }
+
+    /*
+     * Reads "atom symbol" from buf[from .. eol) into symbols, ignoring lines of any other shape.
+     */
+    private static void readSymbol(Input buf, long from, long eol, Cnf symbols) throws IOException {
+        long pos = from;
+        while (pos < eol && buf.get(pos) == ' ') pos++;
+        int atom = 0;
+        int digits = 0;
+        byte b;
+        while (pos < eol && (b = buf.get(pos)) >= '0' && b <= '9') {
+            atom = atom * 10 + (b - '0');
+            pos++;
+            digits++;
+        }
+        if (digits == 0 || atom == 0 || pos >= eol || buf.get(pos) != ' ') return;
+        pos++;
+        long symbolEnd = eol;
+        while (symbolEnd > pos && buf.get(symbolEnd - 1) <= ' ') symbolEnd--;
+        if (symbolEnd == pos) return;
+        byte[] bytes = new byte[(int) (symbolEnd - pos)];
+        for (int k = 0; k < bytes.length; k++) bytes[k] = buf.get(pos + k);
+        symbols.setSymbol(atom, new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    private static long endOfLine(Input buf, long pos, long end) throws IOException {
+        while (pos < end && buf.get(pos) != '\n') pos++;
+        return pos;
+    }
+
+    /*
+     * Writes clauses in the front end's format as they are added, one per line. finish then writes the
+     * line 0 and the symbol table. An I/O error while adding a clause is thrown as UncheckedIOException.
+     */
+    public static final class LineWriter implements ClauseSink, Closeable {
+        private final Out out;
+
+        public LineWriter(String output) throws IOException {
+            out = new Out(output);
+        }
+
+        @Override
+        public void addClause(int[] lits, int offset, int size) {
+            try {
+                for (int k = offset; k < offset + size; k++) {
+                    if (k > offset) out.writeByte(' ');
+                    out.writeInt(lits[k]);
+                }
+                out.writeByte('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /*
+         * Ends the clauses and writes the symbol table of symbols.
+         */
+        public void finish(Cnf symbols) throws IOException {
+            out.writeAscii("0\n");
+            writeSymbols(symbols, out, "");
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /*
+     * Read-only view of a file as bytes at long offsets. The file is mapped one window of at most
+     * windowSize bytes at a time, and a read outside the current window maps the window starting there.
+     */
+    public static final class Input implements Closeable {
+        private final FileChannel channel;
+        private final long size;
+        private final long windowSize;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long windowEnd;
+
+        Input(String path, long windowSize) throws IOException {
+            channel = new RandomAccessFile(path, "r").getChannel();
+            size = channel.size();
+            this.windowSize = windowSize;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        /*
+         * The byte at pos, which must be below size().
+         */
+        public byte get(long pos) throws IOException {
+            if (pos < windowStart || pos >= windowEnd) {
+                windowStart = pos;
+                windowEnd = Math.min(size, pos + windowSize);
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+            }
+            return window.get((int) (pos - windowStart));
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /*
+     * Buffered byte output that formats ints without going through String.
+     */
+    static final class Out implements Closeable {
+        private final OutputStream stream;
+        private final byte[] buffer = new byte[1 << 16];
+        private final byte[] digits = new byte[11];
+        private int count;
+
+        Out(String path) throws IOException {
+            this(new FileOutputStream(path));
+        }
+
+        Out(OutputStream stream) {
+            this.stream = stream;
+        }
+
+        Out writeByte(int b) throws IOException {
+            if (count == buffer.length) flush();
+            buffer[count++] = (byte) b;
+            return this;
+        }
+
+        Out writeAscii(String s) throws IOException {
+            for (int i = 0; i < s.length(); i++) writeByte(s.charAt(i));
+            return this;
+        }
+
+        Out writeInt(int value) throws IOException {
+            if (value < 0) {
+                writeByte('-');
+                value = -value;
+            }
+            int n = 0;
+            do {
+                digits[n++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            while (n > 0) writeByte(digits[--n]);
+            return this;
+        }
+
+        void flush() throws IOException {
+            stream.write(buffer, 0, count);
+            count = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            stream.close();
+        }
+    }
+}
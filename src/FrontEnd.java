@@ -1,22 +1,71 @@
 import java.io.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Front end part of the peg solver.
  * The front end takes as input a puzzle and generates a set of clauses to be satisfied.
+ *
+ * Besides the fixed horizon encoding written to a file, the front end can feed an incremental DPLL
+ * solver directly: the encoding starts with the initial state and grows by one timepoint per call to
+ * extendHorizon, and goals are added behind activation atoms that are passed to the solver as assumptions.
+ *
+ * With symmetry breaking on, the puzzle is solved on a symmetric image of the board: the initial hole is
+ * moved to the smallest hole an automorphism maps it to, and first jumps that an automorphism fixing that
+ * hole maps to a smaller jump are ruled out. getHoleMap maps the holes of a solution back.
+ *
+ * The "one jump per timepoint" and "one peg at the end" constraints are encoded pairwise by default,
+ * setAtMostOne selects a compact encoding with auxiliary atoms instead.
+ *
+ * With reachability pruning on, a forward analysis from the initial state finds the jumps that cannot
+ * fire at their timepoint and the Peg atoms whose value is fixed. Those atoms are left out of the
+ * encoding, clauses they satisfy are dropped and the remaining atoms are numbered without gaps.
+ *
+ * The fixed horizon encoding is handed to a ClauseSink clause by clause, so it can go straight to a
+ * solver or a file without being held in memory. The axioms of each timepoint only depend on that
+ * timepoint and can be generated on several threads, see setThreads.
+ *
+ * A front end can be reused for any number of puzzles, but not by two threads at once.
  */
 public class FrontEnd {
     private int numHoles;
     private int initialHole;
     private List<String[]> triples = new ArrayList<>();
-    private List<int[]> possibleJumps = new ArrayList<>();
-    private List<int[]> holeStates = new ArrayList<>();
     private int numTimepoints;
-    private Map<String, List<Integer>> stateActionMap1 = new HashMap<>();
-    private Map<String, List<Integer>> stateActionMap2 = new HashMap<>();
+    // Every move is a triple in one direction, {from, middle, to}. emptiedBy[h] holds the moves that
+    // take the peg in hole h, as from or middle hole, and filledBy[h] those that put a peg there.
+    private List<int[]> moves = new ArrayList<>();
+    private int[][] emptiedBy;
+    private int[][] filledBy;
+    private int numJumps;
+    private int threads = 1;
+    private volatile boolean stopRequested;
+    // Incremental encoding: pegAtoms.get(t - 1)[h] is the atom of Peg(h,t), jumpAtoms.get(t - 1)[m] the atom of the m-th move at t.
+    private List<int[]> pegAtoms = new ArrayList<>();
+    private List<int[]> jumpAtoms = new ArrayList<>();
+    private List<String> symbols = new ArrayList<>();
+    // Symmetry breaking: holeMap[h] is the original hole of hole h, redundantFirstJumps holds "A B C" keys.
+    private boolean symmetryBreaking;
+    private int[] holeMap;
+    private Set<String> redundantFirstJumps = new HashSet<>();
+    private AtMostOne atMostOne = AtMostOne.PAIRWISE;
+    private int lastAtom;
+    // Reachability pruning: atomValue[a] is 1 or -1 for an atom with a fixed value, 0 for an atom that
+    // stays in the encoding under the number renumber[a].
+    private boolean reachabilityPruning;
+    private int[] atomValue;
+    private int[] renumber;
 
 
     public FrontEnd() {
@@ -24,13 +73,252 @@ public class FrontEnd {
     }
 
     /*
-     * Read puzzle, generate a set of clauses to be satisfied.
+     * Read puzzle, generate a set of clauses to be satisfied and write them to X_Clauses.
+     * Each clause is written as soon as it is generated, the formula is never held in memory.
      */
     public void clausesGenerator(String input) throws IOException {
+        Cnf symbols = new Cnf();
+        try (Dimacs.LineWriter writer = new Dimacs.LineWriter(input + "_Clauses")) {
+            encode(input, writer, symbols);
+            writer.finish(symbols);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /*
+     * Read puzzle, generate a set of clauses to be satisfied and return them in memory.
+     */
+    public Cnf encode(String input) throws IOException {
+        Cnf cnf = new Cnf();
+        encode(input, cnf, cnf);
+        return cnf;
+    }
+
+    /*
+     * Read puzzle and hand each clause to sink as soon as it is generated, e.g. a DPLL solver or a
+     * writer. Only the symbol table is kept, in symbols. The precondition, causal, frame and pairwise
+     * "one jump" axioms of each timepoint are generated into a reusable buffer, on a pool of threads
+     * if setThreads asked for more than one, and passed to sink in timepoint order, so the clauses
+     * are the same whatever the number of threads and at most two timepoints per thread are held
+     * at once.
+     */
+    public void encode(String input, ClauseSink sink, Cnf symbols) throws IOException {
+        readPuzzle(input);
+        AtMostOne.Atoms auxAtoms = symbol -> {
+            symbols.setSymbol(++lastAtom, symbol);
+            return lastAtom;
+        };
+        numJumps = moves.size() * (numTimepoints - 1);
+        int numAtoms = numJumps + numHoles * numTimepoints;
+        atomValue = new int[numAtoms + 1];
+        renumber = new int[numAtoms + 1];
+        if (reachabilityPruning) pruneUnreachable();
+        // Auxiliary atoms of compact at-most-one encodings follow the Peg atoms.
+        lastAtom = 0;
+        for (int atom = 1; atom <= numAtoms; atom++) {
+            if (atomValue[atom] == 0) renumber[atom] = ++lastAtom;
+        }
+        // Generate precondition axioms, causal axioms and frame axioms, and with the pairwise encoding
+        // the "one action at a time" axioms.
+        generateAxioms(sink);
+        // Compact "one action at a time" encodings number their auxiliary atoms in timepoint order.
+        for (int i = 1; i < numTimepoints && atMostOne != AtMostOne.PAIRWISE; i++) {
+            atMostOne(sink, jumpsAt(i), "Jump," + i, auxAtoms);
+        }
+        // A single peg is left only if a jump happens at every timepoint, which pruning relies on.
+        for (int i = 1; i < numTimepoints && reachabilityPruning; i++) addClause(sink, jumpsAt(i));
+        // Generate starting and ending states
+        int[] possibleEndings = new int[numHoles];
+        for (int i = 1; i <= numHoles; i++) {
+            int startIdx = pegIndex(i, 1);
+            // Set the value of each hole at the starting.
+            if (i == initialHole) {
+                addClause(sink, -startIdx);
+            } else {
+                addClause(sink, startIdx);
+            }
+            int endIdx = pegIndex(i, numTimepoints);
+            for (int j = i + 1; j <= numHoles && atMostOne == AtMostOne.PAIRWISE; j++) {
+                addClause(sink, -endIdx, -pegIndex(j, numTimepoints)); // No two holes can have a peg at the end.
+            }
+            possibleEndings[i - 1] = endIdx; // At least one peg at the end.
+        }
+        if (atMostOne != AtMostOne.PAIRWISE) atMostOne(sink, possibleEndings, "End", auxAtoms);
+        addClause(sink, possibleEndings);
+        // Symmetry breaking, first jumps that a symmetry maps to a smaller one.
+        for (int m = 0; m < moves.size() && numTimepoints > 1; m++) {
+            if (isRedundantFirstJump(m)) addClause(sink, -jumpAtom(m, 1));
+        }
+        // Key-atom pairs.
+        for (int m = 0; m < moves.size(); m++) {
+            int[] move = moves.get(m);
+            for (int t = 1; t < numTimepoints; t++) {
+                int atom = jumpAtom(m, t);
+                if (renumber[atom] > 0) symbols.setSymbol(renumber[atom], "Jump(" + move[0] + "," + move[1] + "," + move[2] + "," + t + ")");
+            }
+        }
+        for (int j = 1; j <= numHoles; j++) {
+            for (int k = 1; k <= numTimepoints; k++) {
+                int atom = pegIndex(j, k);
+                if (renumber[atom] > 0) symbols.setSymbol(renumber[atom], "Peg(" + j + "," + k + ")");
+            }
+        }
+    }
+
+    /*
+     * Asks a running encode, possibly on another thread, to give up between two timepoints; it then
+     * throws an InterruptedIOException. Puzzles encoded afterwards fail the same way.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /*
+     * Number of threads that generate the axioms of the puzzles encoded afterwards, 0 for one per
+     * processor. The default of 1 generates them on the calling thread.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /*
+     * Atom of the full encoding for move m at a timepoint. The Jump atoms are ordered by move, then
+     * timepoint, and the moves by triple, then direction.
+     */
+    private int jumpAtom(int m, int timePoint) {
+        return m * (numTimepoints - 1) + timePoint;
+    }
+
+    /*
+     * Atoms of the jumps at a timepoint.
+     */
+    private int[] jumpsAt(int timePoint) {
+        int[] jumps = new int[moves.size()];
+        for (int m = 0; m < jumps.length; m++) jumps[m] = jumpAtom(m, timePoint);
+        return jumps;
+    }
+
+    private boolean isRedundantFirstJump(int m) {
+        if (redundantFirstJumps.isEmpty()) return false;
+        int[] move = moves.get(m);
+        return redundantFirstJumps.contains(move[0] + " " + move[1] + " " + move[2]);
+    }
+
+    private void addClause(ClauseSink sink, int... clause) {
+        addClause(sink, clause, clause.length);
+    }
+
+    /*
+     * Adds the clause in clause[0 .. size) over the atoms of the full encoding. With pruning, a clause
+     * holding a literal that is fixed true is dropped, literals fixed false are left out and the others
+     * are renumbered, in place.
+     */
+    private void addClause(ClauseSink sink, int[] clause, int size) {
+        if (!reachabilityPruning) {
+            sink.addClause(clause, 0, size);
+            return;
+        }
+        int kept = 0;
+        for (int k = 0; k < size; k++) {
+            int lit = clause[k];
+            int atom = Math.abs(lit);
+            int value = lit > 0 ? atomValue[atom] : -atomValue[atom];
+            if (value > 0) return;
+            if (value == 0) clause[kept++] = lit > 0 ? renumber[atom] : -renumber[atom];
+        }
+        sink.addClause(clause, 0, kept);
+    }
+
+    /*
+     * At most one of the atoms of the full encoding is true. Atoms fixed false are left out, and an atom
+     * fixed true rules out all the others.
+     */
+    private void atMostOne(ClauseSink sink, int[] atoms, String label, AtMostOne.Atoms auxAtoms) {
+        int[] open = new int[atoms.length];
+        int size = 0;
+        boolean fixedTrue = false;
+        for (int atom : atoms) {
+            if (atomValue[atom] > 0) fixedTrue = true;
+            if (atomValue[atom] == 0) open[size++] = renumber[atom];
+        }
+        if (fixedTrue) {
+            for (int k = 0; k < size; k++) {
+                open[k] = -open[k];
+                sink.addClause(open, k, 1);
+            }
+        } else {
+            atMostOne.encode(size == open.length ? open : Arrays.copyOf(open, size), label, sink, auxAtoms);
+        }
+    }
+
+    /*
+     * Forward reachability from the initial state, a relaxed planning graph.
+     * canPeg[h] and canEmpty[h] tell whether hole h can hold a peg or be empty at timepoint t in some
+     * sequence of jumps. A jump can fire at t only if its two first holes can hold a peg and its last
+     * can be empty, and the holes it changes can then take their new value at t + 1. A Peg atom whose
+     * hole can take only one value is fixed, a jump that cannot fire is fixed false. The encoding leaves
+     * exactly one peg, so exactly t - 1 jumps happened before t and t holes are empty: when only t holes
+     * can be empty they all are, and when only numHoles - t can hold a peg they all do.
+     */
+    private void pruneUnreachable() {
+        boolean[] canPeg = new boolean[numHoles + 1];
+        boolean[] canEmpty = new boolean[numHoles + 1];
+        for (int h = 1; h <= numHoles; h++) {
+            canPeg[h] = h != initialHole;
+            canEmpty[h] = h == initialHole;
+        }
+        for (int t = 1; t <= numTimepoints; t++) {
+            if (count(canEmpty) == t) {
+                for (int h = 1; h <= numHoles; h++) canPeg[h] &= !canEmpty[h];
+            }
+            if (count(canPeg) == numHoles - t) {
+                for (int h = 1; h <= numHoles; h++) canEmpty[h] &= !canPeg[h];
+            }
+            for (int h = 1; h <= numHoles; h++) {
+                if (!canEmpty[h]) atomValue[pegIndex(h, t)] = 1;
+                else if (!canPeg[h]) atomValue[pegIndex(h, t)] = -1;
+            }
+            if (t == numTimepoints) break;
+            boolean[] nextPeg = canPeg.clone();
+            boolean[] nextEmpty = canEmpty.clone();
+            for (int m = 0; m < moves.size(); m++) {
+                int[] jump = moves.get(m);
+                boolean redundant = t == 1 && isRedundantFirstJump(m);
+                if (!canPeg[jump[0]] || !canPeg[jump[1]] || !canEmpty[jump[2]] || redundant) {
+                    atomValue[jumpAtom(m, t)] = -1;
+                    continue;
+                }
+                nextEmpty[jump[0]] = true;
+                nextEmpty[jump[1]] = true;
+                nextPeg[jump[2]] = true;
+            }
+            canPeg = nextPeg;
+            canEmpty = nextEmpty;
+        }
+    }
+
+    private static int count(boolean[] holes) {
+        int count = 0;
+        for (boolean hole : holes) {
+            if (hole) count++;
+        }
+        return count;
+    }
+
+    /*
+     * Read the number of holes, the initial hole and the triples of a puzzle.
+     * The state of a puzzle read before is dropped, so one front end can encode puzzles one after another.
+     */
+    public void readPuzzle(String input) throws IOException {
+        triples.clear();
+        moves.clear();
+        pegAtoms.clear();
+        jumpAtoms.clear();
+        symbols.clear();
+        redundantFirstJumps.clear();
         File inputFile = new File(input);
         BufferedReader br = new BufferedReader(new FileReader(inputFile));
-        File outputFile = new File(input + "_Clauses");
-        BufferedWriter bw = new BufferedWriter(new FileWriter(outputFile));
         String line = "";
         while ((line = br.readLine()) != null) {
             String[] l = line.split("\\s");
@@ -43,176 +331,427 @@ public class FrontEnd {
             }
         }
         br.close();
-        for (int i = 1; i <= numHoles; i++) {
-            for (int j = 1; j <= numTimepoints; j++) {
-                holeStates.add(new int[]{i, j});
+        int[] emptied = new int[numHoles + 1];
+        int[] filled = new int[numHoles + 1];
+        for (String[] triple : triples) {
+            int a = Integer.parseInt(triple[0]);
+            int b = Integer.parseInt(triple[1]);
+            int c = Integer.parseInt(triple[2]);
+            moves.add(new int[]{a, b, c});
+            moves.add(new int[]{c, b, a});
+            emptied[a]++;
+            emptied[b] += 2;
+            emptied[c]++;
+            filled[a]++;
+            filled[c]++;
+        }
+        emptiedBy = new int[numHoles + 1][];
+        filledBy = new int[numHoles + 1][];
+        for (int h = 1; h <= numHoles; h++) {
+            emptiedBy[h] = new int[emptied[h]];
+            filledBy[h] = new int[filled[h]];
+            emptied[h] = 0;
+            filled[h] = 0;
+        }
+        for (int m = 0; m < moves.size(); m++) {
+            int[] move = moves.get(m);
+            emptiedBy[move[0]][emptied[move[0]]++] = m;
+            emptiedBy[move[1]][emptied[move[1]]++] = m;
+            filledBy[move[2]][filled[move[2]]++] = m;
+        }
+        holeMap = new int[numHoles + 1];
+        for (int h = 1; h <= numHoles; h++) holeMap[h] = h;
+        if (symmetryBreaking) breakSymmetries();
+    }
+
+    /*
+     * Turn symmetry breaking on or off for the puzzles read afterwards.
+     */
+    public void setSymmetryBreaking(boolean symmetryBreaking) {
+        this.symmetryBreaking = symmetryBreaking;
+    }
+
+    /*
+     * Turn reachability pruning on or off for the puzzles encoded afterwards.
+     */
+    public void setReachabilityPruning(boolean reachabilityPruning) {
+        this.reachabilityPruning = reachabilityPruning;
+    }
+
+    /*
+     * Encoding of the at-most-one constraints in the puzzles encoded afterwards.
+     */
+    public void setAtMostOne(AtMostOne atMostOne) {
+        this.atMostOne = atMostOne;
+    }
+
+    /*
+     * Original hole of each hole of the encoding, indexed by hole. The identity without symmetry breaking.
+     */
+    public int[] getHoleMap() {
+        return holeMap;
+    }
+
+    /*
+     * Move the initial hole to the smallest hole in its orbit and collect the first jumps that are not
+     * the smallest in their orbit under the automorphisms fixing the new initial hole.
+     * A solution starting with such a jump maps to one starting with the smallest jump, so they can go.
+     */
+    private void breakSymmetries() {
+        List<int[]> tripleHoles = getTriples();
+        List<int[]> automorphisms = new BoardSymmetry(numHoles, tripleHoles).getAutomorphisms();
+        if (automorphisms.isEmpty()) return;
+        int[] best = automorphisms.get(0);
+        for (int[] perm : automorphisms) {
+            if (perm[initialHole] < best[initialHole]) best = perm;
+        }
+        for (int h = 1; h <= numHoles; h++) holeMap[best[h]] = h;
+        initialHole = best[initialHole];
+        // Union the first jumps that a stabilizing automorphism maps onto each other.
+        List<int[]> jumps = new ArrayList<>();
+        Map<String, Integer> jumpIndex = new HashMap<>();
+        for (int[] triple : tripleHoles) {
+            for (int[] jump : new int[][]{triple, {triple[2], triple[1], triple[0]}}) {
+                jumpIndex.put(jump[0] + " " + jump[1] + " " + jump[2], jumps.size());
+                jumps.add(jump);
             }
         }
+        int[] parent = new int[jumps.size()];
+        for (int j = 0; j < parent.length; j++) parent[j] = j;
+        for (int[] perm : automorphisms) {
+            if (perm[initialHole] != initialHole) continue;
+            for (int j = 0; j < jumps.size(); j++) {
+                int[] jump = jumps.get(j);
+                int image = jumpIndex.get(perm[jump[0]] + " " + perm[jump[1]] + " " + perm[jump[2]]);
+                int a = root(parent, j);
+                int b = root(parent, image);
+                if (a != b) parent[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+        // The root of each orbit is its smallest jump, in the order of the input triples.
+        for (int j = 0; j < jumps.size(); j++) {
+            if (root(parent, j) != j) {
+                int[] jump = jumps.get(j);
+                redundantFirstJumps.add(jump[0] + " " + jump[1] + " " + jump[2]);
+            }
+        }
+    }
+
+    private static int root(int[] parent, int j) {
+        while (parent[j] != j) j = parent[j] = parent[parent[j]];
+        return j;
+    }
+
+    public int getNumHoles() {
+        return numHoles;
+    }
+
+    /*
+     * Initial hole of the puzzle read last, moved by symmetry breaking if that is on.
+     */
+    public int getInitialHole() {
+        return initialHole;
+    }
+
+    /*
+     * Triples of the puzzle read last as {A, B, C}, B being the middle hole.
+     */
+    public List<int[]> getTriples() {
+        List<int[]> tripleHoles = new ArrayList<>();
         for (String[] triple : triples) {
-            for (int i = 0; i < triple.length; i += 2) {
-                for (int j = 1; j < numTimepoints; j++) {
-                    int[] endPoints = new int[]{Integer.parseInt(triple[i]), Integer.parseInt(triple[1]), Integer.parseInt(triple[i == 0 ? 2 : 0]), j};
-                    possibleJumps.add(endPoints);
-                    // Prepare for generating frame axioms.
-                    String state1 = endPoints[0] + " " + endPoints[3];
-                    String state2 = endPoints[1] + " " + endPoints[3];
-                    String state3 = endPoints[2] + " " + endPoints[3];
-                    int actionIndex = possibleJumps.size();
-                    if (!stateActionMap1.containsKey(state1)) stateActionMap1.put(state1, new ArrayList<>());
-                    if (!stateActionMap1.containsKey(state2)) stateActionMap1.put(state2, new ArrayList<>());
-                    if (!stateActionMap2.containsKey(state3)) stateActionMap2.put(state3, new ArrayList<>());
-                    stateActionMap1.get(state1).add(actionIndex);
-                    stateActionMap1.get(state2).add(actionIndex);
-                    stateActionMap2.get(state3).add(actionIndex);
-                }
+            tripleHoles.add(new int[]{Integer.parseInt(triple[0]), Integer.parseInt(triple[1]), Integer.parseInt(triple[2])});
+        }
+        return tripleHoles;
+    }
+
+    /*
+     * Start the incremental encoding: Peg atoms of timepoint 1 and the initial state.
+     * The puzzle must have been read with readPuzzle.
+     */
+    public void startHorizon(DPLL solver) {
+        symbols.add(null); // Atoms are numbered from 1.
+        pegAtoms.add(newPegAtoms(1));
+        for (int h = 1; h <= numHoles; h++) {
+            int peg = pegAtoms.get(0)[h];
+            solver.addClause(h == initialHole ? -peg : peg);
+        }
+    }
+
+    /*
+     * Number of timepoints encoded so far. A horizon of T allows T - 1 jumps.
+     */
+    public int horizon() {
+        return pegAtoms.size();
+    }
+
+    /*
+     * Extend the incremental encoding by one timepoint: the jumps from the last timepoint t, the Peg
+     * atoms of t + 1, and the precondition, causal, frame and mutex axioms linking the two.
+     */
+    public void extendHorizon(DPLL solver) {
+        int t = horizon();
+        int[] pegs = pegAtoms.get(t - 1);
+        int[] jumps = new int[moves.size()];
+        for (int m = 0; m < moves.size(); m++) {
+            int[] move = moves.get(m);
+            jumps[m] = newAtom("Jump(" + move[0] + "," + move[1] + "," + move[2] + "," + t + ")");
+        }
+        int[] next = newPegAtoms(t + 1);
+        jumpAtoms.add(jumps);
+        pegAtoms.add(next);
+        if (t == 1) {
+            for (int m = 0; m < moves.size(); m++) {
+                int[] move = moves.get(m);
+                if (redundantFirstJumps.contains(move[0] + " " + move[1] + " " + move[2])) solver.addClause(-jumps[m]);
             }
         }
-        List<String> preconditionAxioms = new ArrayList<>();
-        List<String> causalAxioms = new ArrayList<>();
-        List<String> frameAxioms = new ArrayList<>();
-        // Generate precondition axioms, causal axioms and frame axioms
-        generateAxioms(preconditionAxioms, causalAxioms, frameAxioms);
-        // One action at a time
-        // -(Jump(A,B,C,I) ^ Jump(X,Y,Z,I)) gives:
-        // -Jump(A,B,C,I) v -Jump(X,Y,Z,I)
-        List<String> mutexActions = new ArrayList<>();
-        for (int i = 1; i < numTimepoints; i++) {
-            for (int j = i - 1; j < possibleJumps.size(); j += (numTimepoints - 1)) {
-                for (int k = j + numTimepoints - 1; k < possibleJumps.size(); k += (numTimepoints - 1)) {
-                    mutexActions.add(-(j + 1) + " " + -(k + 1)); // No two jumps at the same timepoint can both happen.
+        for (int m = 0; m < moves.size(); m++) {
+            int[] move = moves.get(m);
+            // Jump(A,B,C,t) => Peg(A,t) ^ Peg(B,t) ^ -Peg(C,t)
+            solver.addClause(-jumps[m], pegs[move[0]]);
+            solver.addClause(-jumps[m], pegs[move[1]]);
+            solver.addClause(-jumps[m], -pegs[move[2]]);
+            // Jump(A,B,C,t) => -Peg(A,t+1) ^ -Peg(B,t+1) ^ Peg(C,t+1)
+            solver.addClause(-jumps[m], -next[move[0]]);
+            solver.addClause(-jumps[m], -next[move[1]]);
+            solver.addClause(-jumps[m], next[move[2]]);
+        }
+        // No two jumps at the same timepoint can both happen.
+        atMostOne.encode(jumps, "Jump," + t, solver, this::newAtom);
+        // Frame axioms, a hole only changes through a jump that involves it:
+        // Peg(H,t) ^ -Peg(H,t+1) => Jump(H,X,Y,t) v Jump(X,H,Y,t)
+        // -Peg(H,t) ^ Peg(H,t+1) => Jump(X,Y,H,t)
+        for (int h = 1; h <= numHoles; h++) {
+            List<Integer> emptied = new ArrayList<>();
+            List<Integer> filled = new ArrayList<>();
+            emptied.add(-pegs[h]);
+            emptied.add(next[h]);
+            filled.add(pegs[h]);
+            filled.add(-next[h]);
+            for (int m = 0; m < moves.size(); m++) {
+                int[] move = moves.get(m);
+                if (move[0] == h || move[1] == h) emptied.add(jumps[m]);
+                if (move[2] == h) filled.add(jumps[m]);
+            }
+            solver.addClause(toArray(emptied));
+            solver.addClause(toArray(filled));
+        }
+    }
+
+    /*
+     * Add the goal "at most maxPegs pegs left at the last timepoint" behind a new activation atom, and
+     * return that atom. The goal only binds while the atom is assumed true, so the same solver can be
+     * asked again after the horizon is extended. The bound is encoded with a sequential counter,
+     * maxPegs must be at least 1.
+     */
+    public int addGoal(DPLL solver, int maxPegs) {
+        int[] pegs = pegAtoms.get(horizon() - 1);
+        int goal = newAtom("Goal(" + maxPegs + "," + horizon() + ")");
+        // At least one peg is left.
+        int[] atLeastOne = new int[numHoles + 1];
+        atLeastOne[0] = -goal;
+        for (int h = 1; h <= numHoles; h++) atLeastOne[h] = pegs[h];
+        solver.addClause(atLeastOne);
+        // counts[h][j] is true when at least j + 1 of the holes 1..h have a peg.
+        int[][] counts = new int[numHoles + 1][maxPegs];
+        for (int h = 1; h <= numHoles; h++) {
+            for (int j = 0; j < maxPegs; j++) {
+                counts[h][j] = newAtom("Count(" + h + "," + (j + 1) + "," + horizon() + ")");
+                if (j == 0) {
+                    solver.addClause(-goal, -pegs[h], counts[h][j]);
+                } else if (h > 1) {
+                    solver.addClause(-goal, -pegs[h], -counts[h - 1][j - 1], counts[h][j]);
+                } else {
+                    solver.addClause(-goal, -counts[h][j]);
                 }
+                if (h > 1) solver.addClause(-goal, -counts[h - 1][j], counts[h][j]);
             }
+            if (h > 1) solver.addClause(-goal, -pegs[h], -counts[h - 1][maxPegs - 1]);
         }
-        // Generate starting and ending states
-        List<String> initialAndFinalStates = new ArrayList<>();
-        String possibleEndings = "";
-        for (int i = 1; i <= numHoles; i++) {
-            int startIdx = i * numTimepoints + possibleJumps.size() - numTimepoints + 1;
-            // Set the value of each hole at the starting.
-            if (i == initialHole) {
-                initialAndFinalStates.add("" + -startIdx);
-            } else {
-                initialAndFinalStates.add("" + startIdx);
-            }
-            int endIdx = i * numTimepoints + possibleJumps.size();
-            possibleEndings += (endIdx + " "); // At least one peg at the end.
-            for (int j = i + 1; j <= numHoles; j++) {
-                int nextIdx = j * numTimepoints + possibleJumps.size();
-                initialAndFinalStates.add(-endIdx + " " + -nextIdx); // No two holes can have a peg at the end.
-            }
-        }
-        initialAndFinalStates.add(possibleEndings.trim());
-        // Write to output file.
-        for (String s : preconditionAxioms) {
-            bw.write(s);
-            bw.newLine();
-        }
-        for (String s : causalAxioms) {
-            bw.write(s);
-            bw.newLine();
-        }
-        for (String s : frameAxioms) {
-            bw.write(s);
-            bw.newLine();
-        }
-        for (String s : mutexActions) {
-            bw.write(s);
-            bw.newLine();
-        }
-        for (String s : initialAndFinalStates) {
-            bw.write(s);
-            bw.newLine();
-        }
-        // Write key-atom pairs to output.
-        bw.write("0");
-        bw.newLine();
-        int i = 1;
-        for (; i <= possibleJumps.size(); i++) {
-            int[] jump = possibleJumps.get(i - 1);
-            String symbol = "Jump(" + jump[0] + "," + jump[1] + "," + jump[2] + "," + jump[3] + ")";
-            bw.write(i + " " + symbol);
-            bw.newLine();
+        return goal;
+    }
+
+    /*
+     * Symbols of the incremental encoding, indexed by atom.
+     */
+    public List<String> getSymbols() {
+        return symbols;
+    }
+
+    private int[] newPegAtoms(int t) {
+        int[] atoms = new int[numHoles + 1];
+        for (int h = 1; h <= numHoles; h++) atoms[h] = newAtom("Peg(" + h + "," + t + ")");
+        return atoms;
+    }
+
+    private int newAtom(String symbol) {
+        symbols.add(symbol);
+        return symbols.size() - 1;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] arr = new int[list.size()];
+        for (int i = 0; i < arr.length; i++) arr[i] = list.get(i);
+        return arr;
+    }
+
+    /*
+     * Generate precondition axioms, causal axioms and frame axioms, and the pairwise "one action at a
+     * time" axioms, timepoint by timepoint. With more than one thread, up to two timepoints per thread
+     * are generated ahead while the main thread hands the finished ones to sink in order.
+     */
+    private void generateAxioms(ClauseSink sink) throws IOException {
+        int lastJumpTimepoint = numTimepoints - 1;
+        if (threads == 1 || lastJumpTimepoint < 2) {
+            ClauseBuffer direct = new ClauseBuffer(sink);
+            for (int t = 1; t <= lastJumpTimepoint; t++) {
+                if (stopRequested) throw new InterruptedIOException("Clause generation stopped");
+                generateAxioms(t, direct);
+            }
+            return;
         }
-        for (int j = 1; j <= numHoles; j++) {
-            for (int k = 1; k <= numTimepoints; k++) {
-                String symbol = "Peg(" + j + "," + k + ")";
-                bw.write((i + (j - 1) * numTimepoints + k - 1) + " " + symbol);
-                bw.newLine();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Deque<Future<ClauseBuffer>> pending = new ArrayDeque<>();
+        Deque<ClauseBuffer> free = new ArrayDeque<>();
+        try {
+            int next = 1;
+            while (next <= lastJumpTimepoint || !pending.isEmpty()) {
+                if (stopRequested) throw new InterruptedIOException("Clause generation stopped");
+                while (next <= lastJumpTimepoint && pending.size() < 2 * threads) {
+                    int t = next++;
+                    ClauseBuffer buffer = free.isEmpty() ? new ClauseBuffer(null) : free.poll();
+                    pending.add(pool.submit(() -> {
+                        generateAxioms(t, buffer);
+                        return buffer;
+                    }));
+                }
+                ClauseBuffer buffer = pending.poll().get();
+                buffer.drainTo(sink);
+                free.add(buffer);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Clause generation interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Clause generation failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
         }
-        bw.close();
     }
 
     /*
-     * Generate precondition axioms, causal axioms, and frame axioms.
+     * Generate the axioms of the jumps at timepoint t into buffer.
      */
-    public void generateAxioms(List<String> preconditionAxioms, List<String> causalAxioms, List<String> frameAxioms) {
-        int numJumps = possibleJumps.size();
-        for (int i = 1; i <= numJumps; i++) {
-            int[] endPoints = possibleJumps.get(i - 1);
-            int from = endPoints[0];
-            int middle = endPoints[1];
-            int to = endPoints[2];
-            int timePoint = endPoints[3];
-            // For every possible jump, first calculate the corresponding number of the three relevant pegs at timepoint 0.
-            // Number of peg at any given timepoint can be calculated based of previous results.
-            int baseFrom = from * numTimepoints + numJumps - numTimepoints;
-            int baseMiddle = middle * numTimepoints + numJumps - numTimepoints;
-            int baseTo = to * numTimepoints + numJumps - numTimepoints;
+    private void generateAxioms(int t, ClauseBuffer buffer) {
+        int[] clause = buffer.clause(2);
+        for (int m = 0; m < moves.size(); m++) {
+            int[] move = moves.get(m);
+            int jump = jumpAtom(m, t);
             // Generate precondition axioms
             // Jump(A,B,C,I) => Peg(A,I) ^ Peg(B,I) ^ -Peg(C,I) gives:
             // (-Jump(A,B,C,I) v Peg(A,I)) ^ (-Jump(A,B,C,I) v Peg(B,I)) ^ (-Jump(A,B,C,I) v -Peg(C,I))
-            int p1 = baseFrom + timePoint;
-            int p2 = baseMiddle + timePoint;
-            int p3 = baseTo + timePoint;
-            preconditionAxioms.add(-i + " " + p1);
-            preconditionAxioms.add(-i + " " + p2);
-            preconditionAxioms.add(-i + " " + -p3);
+            addBinary(buffer, clause, -jump, pegIndex(move[0], t));
+            addBinary(buffer, clause, -jump, pegIndex(move[1], t));
+            addBinary(buffer, clause, -jump, -pegIndex(move[2], t));
             // Generate causal axioms
             // Jump(A,B,C,I) => -Peg(A,I+1) ^ -Peg(B,I+1) ^ Peg(C,I+1) gives:
             // (-Jump(A,B,C,I) v -Peg(A,I+1)) ^ (-Jump(A,B,C,I) v -Peg(B,I+1)) ^ (-Jump(A,B,C,I) v Peg(C,I+1))
-            int c1 = baseFrom + timePoint + 1;
-            int c2 = baseMiddle + timePoint + 1;
-            int c3 = baseTo + timePoint + 1;
-            causalAxioms.add(-i + " " + -c1);
-            causalAxioms.add(-i + " " + -c2);
-            causalAxioms.add(-i + " " + c3);
+            addBinary(buffer, clause, -jump, -pegIndex(move[0], t + 1));
+            addBinary(buffer, clause, -jump, -pegIndex(move[1], t + 1));
+            addBinary(buffer, clause, -jump, pegIndex(move[2], t + 1));
         }
         // Generate frame axioms
         // Peg(H,I) ^ -Peg(H,I+1) => Jump(X,H,Y,I) v Jump(H,X,Y,I) gives:
         // -Peg(H,I) v Peg(H,I+1) v Jump(X,H,Y,I) v Jump(H,X,Y,I)
         // -Peg(H,I) ^ Peg(H,I+1) => Jump(X,Y,H,I) gives:
         // Peg(H,I) v -Peg(H,I+1) v Jump(X,Y,H,I)
-        generateFrameAxioms(frameAxioms);
+        for (int h = 1; h <= numHoles; h++) {
+            int stateIdx = pegIndex(h, t);
+            if (emptiedBy[h].length > 0) addFrameClause(buffer, -stateIdx, stateIdx + 1, emptiedBy[h], t);
+            if (filledBy[h].length > 0) addFrameClause(buffer, stateIdx, -(stateIdx + 1), filledBy[h], t);
+        }
+        // One action at a time
+        // -(Jump(A,B,C,I) ^ Jump(X,Y,Z,I)) gives:
+        // -Jump(A,B,C,I) v -Jump(X,Y,Z,I)
+        for (int j = 0; j < moves.size() && atMostOne == AtMostOne.PAIRWISE; j++) {
+            for (int k = j + 1; k < moves.size(); k++) {
+                addBinary(buffer, clause, -jumpAtom(j, t), -jumpAtom(k, t)); // No two jumps at the same timepoint can both happen.
+            }
+        }
+    }
+
+    private void addBinary(ClauseBuffer buffer, int[] clause, int a, int b) {
+        clause[0] = a;
+        clause[1] = b;
+        addClause(buffer, clause, 2);
+    }
+
+    private void addFrameClause(ClauseBuffer buffer, int before, int after, int[] moveIndices, int t) {
+        int[] clause = buffer.clause(moveIndices.length + 2);
+        clause[0] = before;
+        clause[1] = after;
+        for (int k = 0; k < moveIndices.length; k++) clause[k + 2] = jumpAtom(moveIndices[k], t);
+        addClause(buffer, clause, moveIndices.length + 2);
     }
 
     /*
-     * Generate frame axioms.
+     * Atom number of Peg(hole,timePoint), the Peg atoms follow the Jump atoms hole by hole.
      */
-    public void generateFrameAxioms(List<String> frameAxioms) {
-        for (int i = 1; i <= numHoles; i++) {
-            for (int j = 1; j < numTimepoints; j++) {
-                String state = i + " " + j;
-                int stateIdx = i * numTimepoints + possibleJumps.size() - numTimepoints + j;
-                int nextIdx = stateIdx + 1;
-                // For each peg state, relevant jump actions could be retrieved from the two maps.
-                if (stateActionMap1.containsKey(state)) {
-                    List<Integer> actionIndices1 = stateActionMap1.get(state);
-                    String clause1 = -stateIdx + " " + nextIdx;
-                    for (int idx : actionIndices1) {
-                        clause1 += (" " + idx);
-                    }
-                    frameAxioms.add(clause1);
-                }
-                if (stateActionMap2.containsKey(state)) {
-                    List<Integer> actionIndices2 = stateActionMap2.get(state);
-                    String clause2 = stateIdx + " " + -nextIdx;
-                    for (int idx : actionIndices2) {
-                        clause2 += (" " + idx);
-                    }
-                    frameAxioms.add(clause2);
-                }
+    private int pegIndex(int hole, int timePoint) {
+        return numJumps + (hole - 1) * numTimepoints + timePoint;
+    }
+
+    /*
+     * Clauses of one timepoint held back to back, so that they can be generated on one thread and
+     * handed on by another. The arrays only grow, a buffer is reused from one timepoint to the next.
+     * A buffer with a target passes each clause straight on instead and only lends its scratch array.
+     */
+    private static final class ClauseBuffer implements ClauseSink {
+        private final ClauseSink target;
+        private int[] literals = new int[1024];
+        private int numLiterals;
+        private int[] sizes = new int[256];
+        private int numClauses;
+        private int[] clause = new int[16];
+
+        ClauseBuffer(ClauseSink target) {
+            this.target = target;
+        }
+
+        /*
+         * Scratch array of at least size entries to build a clause in.
+         */
+        int[] clause(int size) {
+            if (clause.length < size) clause = new int[size * 2];
+            return clause;
+        }
+
+        @Override
+        public void addClause(int[] lits, int offset, int size) {
+            if (target != null) {
+                target.addClause(lits, offset, size);
+                return;
+            }
+            if (numLiterals + size > literals.length) {
+                literals = Arrays.copyOf(literals, Math.max(numLiterals + size, literals.length * 2));
+            }
+            if (numClauses == sizes.length) sizes = Arrays.copyOf(sizes, numClauses * 2);
+            System.arraycopy(lits, offset, literals, numLiterals, size);
+            numLiterals += size;
+            sizes[numClauses++] = size;
+        }
+
+        /*
+         * Hands the clauses to sink in the order they were added and empties the buffer.
+         */
+        void drainTo(ClauseSink sink) {
+            int start = 0;
+            for (int i = 0; i < numClauses; i++) {
+                sink.addClause(literals, start, sizes[i]);
+                start += sizes[i];
             }
+            numLiterals = 0;
+            numClauses = 0;
         }
     }
 }
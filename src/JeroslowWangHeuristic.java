@@ -0,0 +1,57 @@
+/**
+ * Two-sided Jeroslow-Wang branching heuristic, a MOMS style rule.
+ * Each atom scores the sum of 2^-|C| over the input clauses C it occurs in, either sign, so atoms
+ * in many short clauses are picked first. Scores are fixed by the input and kept in a heap.
+ * Auxiliary atoms of compact encodings, named Aux(...), are only picked after all other atoms.
+ */
+public class JeroslowWangHeuristic implements BranchingHeuristic {
+    private static final double AUX_PENALTY = 1e12;
+    private final VarHeap heap = new VarHeap();
+
+    public JeroslowWangHeuristic() {
+
+    }
+
+    @Override
+    public void addAtom(int atom) {
+        heap.insert(atom);
+    }
+
+    @Override
+    public void onClause(int[] codes, int start, int size) {
+        double weight = Math.pow(2, -size);
+        for (int k = start; k < start + size; k++) {
+            int atom = codes[k] >> 1;
+            heap.setScore(atom, heap.score(atom) + weight);
+        }
+    }
+
+    @Override
+    public void onConflict(int[] codes, int start, int size) {
+
+    }
+
+    @Override
+    public void onUnassign(int atom) {
+        heap.insert(atom);
+    }
+
+    @Override
+    public int pick(int[] values) {
+        while (!heap.isEmpty()) {
+            int atom = heap.removeMax();
+            if (values[atom] == -1) return atom;
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean usesSymbols() {
+        return true;
+    }
+
+    @Override
+    public void onSymbol(int atom, String symbol) {
+        if (symbol.startsWith("Aux")) heap.setScore(atom, heap.score(atom) - AUX_PENALTY);
+    }
+}
@@ -1,24 +1,379 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
 
 /**
  * Peg solver.
  * The peg solver takes as argument an input file path, and generates the path that solves the peg game.
+ * The front end, DPLL program and back end hand the clauses and the model to each other in memory;
+ * -dump also writes the intermediate X_Clauses and X_Clauses_DPLL_output files for debugging, and the
+ * clauses in DIMACS CNF format as X_Clauses.cnf. With -dimacs the input is a DIMACS CNF file instead of
+ * a puzzle, and the result is printed in SAT competition format; the options of the puzzle encoding,
+ * -pegs, -engine bitboard, -cache and -dump are rejected with it.
+ * -portfolio n races n differently configured solvers on n threads (0 for one per processor), and
+ * -share lets them exchange short learned clauses.
+ * -cubes n splits the formula into cubes with a lookahead and solves them on n threads (0 for one per
+ * processor) of a fork-join pool, see CubeAndConquer.
+ * -encodeThreads n generates the clauses of the timepoints on n threads (0 for one per processor); without
+ * -dump, -preprocess, -portfolio, -cubes, -all or -count they go straight into the solver.
+ * -symmetry solves the puzzle on a symmetric image of the board with redundant first jumps ruled out,
+ * and maps the path back to the original board.
+ * -amo sequential|commander|binary encodes the "one jump per timepoint" and "one peg at the end"
+ * constraints with auxiliary atoms in a linear number of clauses instead of pairwise.
+ * -prune leaves out the jumps that cannot fire and the Peg atoms that are fixed at their timepoint.
+ * Passing -cdcl before the path makes the DPLL program use conflict-driven clause learning, and
+ * -heuristic vsids|jw|static selects how it picks the atom to branch on, and -pure turns on pure literal
+ * elimination in the classic mode.
+ * With -pegs k the solver instead looks for the shortest sequence of jumps that leaves at most k pegs,
+ * growing the plan one timepoint at a time on a single incremental DPLL solver; -cache, -preprocess,
+ * -portfolio, -cubes and -dump are rejected with it.
+ * -preprocess simplifies the clauses before solving and extends the model to the removed atoms afterwards.
+ * -engine bitboard skips the clauses and searches the jumps directly on bitboards of up to 128 holes,
+ * see BitboardSolver; -engine sat, the default, is the front end, DPLL program and back end route.
+ * The options of the clauses and the DPLL program are rejected with -engine bitboard.
+ * -all writes every path of the puzzle to X_All_Paths, one line per path as soon as it is found, and
+ * -count only prints how many paths there are; -limit n stops either after n paths, see SolutionEnumerator.
+ * -cache file looks the puzzle up in a solution cache kept in file before solving it, and adds the path
+ * to the cache afterwards.
+ * -stats prints the search counters and the time of each phase to standard error at the end and makes
+ * them readable over JMX while the solver runs, -progress s prints the counters every s seconds.
  */
 public class PegSolver {
 
-    public static void main(String[] args) throws IOException {
-        if (args.length != 1) {
-            System.out.println("Usage: java PegSolver path_to_input_puzzle");
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean cdcl = false;
+        BranchingHeuristic heuristic = null;
+        boolean badArgs = false;
+        int maxPegs = 0;
+        boolean dump = false;
+        boolean dimacs = false;
+        int portfolio = -1;
+        boolean share = false;
+        int cubes = -1;
+        int encodeThreads = 1;
+        boolean symmetry = false;
+        boolean prune = false;
+        AtMostOne atMostOne = AtMostOne.PAIRWISE;
+        boolean showStats = false;
+        boolean pure = false;
+        boolean preprocess = false;
+        String cacheFile = null;
+        boolean all = false;
+        boolean countOnly = false;
+        long limit = 0;
+        boolean bitboard = false;
+        int progressSeconds = 0;
+        String puzzleInput = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-cdcl")) {
+                cdcl = true;
+            } else if (arg.equals("-dump")) {
+                dump = true;
+            } else if (arg.equals("-dimacs")) {
+                dimacs = true;
+            } else if (arg.equals("-portfolio") && i + 1 < args.length) {
+                portfolio = Integer.parseInt(args[++i]);
+                badArgs |= portfolio < 0;
+            } else if (arg.equals("-cubes") && i + 1 < args.length) {
+                cubes = Integer.parseInt(args[++i]);
+                badArgs |= cubes < 0;
+            } else if (arg.equals("-encodeThreads") && i + 1 < args.length) {
+                encodeThreads = Integer.parseInt(args[++i]);
+                badArgs |= encodeThreads < 0;
+            } else if (arg.equals("-share")) {
+                share = true;
+            } else if (arg.equals("-preprocess")) {
+                preprocess = true;
+            } else if (arg.equals("-engine") && i + 1 < args.length) {
+                String engine = args[++i];
+                bitboard = engine.equals("bitboard");
+                badArgs |= !bitboard && !engine.equals("sat");
+            } else if (arg.equals("-cache") && i + 1 < args.length) {
+                cacheFile = args[++i];
+            } else if (arg.equals("-all")) {
+                all = true;
+            } else if (arg.equals("-count")) {
+                countOnly = true;
+            } else if (arg.equals("-limit") && i + 1 < args.length) {
+                limit = Long.parseLong(args[++i]);
+                badArgs |= limit < 1;
+            } else if (arg.equals("-pure")) {
+                pure = true;
+            } else if (arg.equals("-stats")) {
+                showStats = true;
+            } else if (arg.equals("-progress") && i + 1 < args.length) {
+                progressSeconds = Integer.parseInt(args[++i]);
+                badArgs |= progressSeconds < 1;
+            } else if (arg.equals("-symmetry")) {
+                symmetry = true;
+            } else if (arg.equals("-prune")) {
+                prune = true;
+            } else if (arg.equals("-amo") && i + 1 < args.length) {
+                atMostOne = atMostOne(args[++i]);
+                badArgs |= atMostOne == null;
+            } else if (arg.equals("-heuristic") && i + 1 < args.length) {
+                heuristic = heuristic(args[++i]);
+                badArgs |= heuristic == null;
+            } else if (arg.equals("-pegs") && i + 1 < args.length) {
+                maxPegs = Integer.parseInt(args[++i]);
+                badArgs |= maxPegs < 1;
+            } else if (puzzleInput == null && !arg.startsWith("-")) {
+                puzzleInput = arg;
+            } else {
+                badArgs = true;
+            }
+        }
+        // Enumeration runs on one solver of a fixed horizon puzzle encoding, and symmetry breaking would
+        // drop the paths that are images of others.
+        badArgs |= (all || countOnly) && (dimacs || portfolio >= 0 || cubes >= 0 || bitboard || maxPegs > 0 || cacheFile != null || symmetry);
+        badArgs |= limit > 0 && !all && !countOnly;
+        // The bitboard engine searches the jumps directly, so none of the clause options apply to it.
+        badArgs |= bitboard && (cacheFile != null || preprocess || portfolio >= 0 || cubes >= 0 || dump || dimacs
+                || cdcl || heuristic != null || pure);
+        // Incremental solving adds the timepoints one by one to a single solver and writes only the path.
+        badArgs |= maxPegs > 0 && (cacheFile != null || preprocess || portfolio >= 0 || cubes >= 0 || dump);
+        // A DIMACS file is already clauses, so the options of the puzzle encoding have nothing to work on.
+        badArgs |= dimacs && (symmetry || prune || atMostOne != AtMostOne.PAIRWISE || encodeThreads != 1 || maxPegs > 0
+                || bitboard || cacheFile != null || dump);
+        if (badArgs || puzzleInput == null) {
+            System.out.println("Usage: java PegSolver [-cdcl] [-heuristic vsids|jw|static] [-pegs k] [-engine sat|bitboard] [-dump] [-dimacs] [-portfolio n [-share]] [-cubes n] [-encodeThreads n] [-all|-count [-limit n]] [-symmetry] [-prune] [-amo pairwise|sequential|commander|binary] [-pure] [-preprocess] [-cache file] [-stats] [-progress seconds] path_to_input_puzzle");
             System.exit(-1);
         }
         DPLL dpll = new DPLL();
-        FrontEnd frontEnd = new FrontEnd();
-        BackEnd backEnd = new BackEnd();
-        String puzzleInput = args[0];
-        frontEnd.clausesGenerator(puzzleInput);
-        String puzzleOutput = puzzleInput + "_Clauses";
-        dpll.dp(puzzleOutput);
-        String dpllOutput = puzzleOutput + "_DPLL_output";
-        backEnd.generatePath(dpllOutput);
+        dpll.setCdcl(cdcl);
+        dpll.setPureLiterals(pure);
+        if (heuristic != null) dpll.setHeuristic(heuristic);
+        SolverStats stats = dpll.getStats();
+        if (showStats) stats.registerMBean(new File(puzzleInput).getName());
+        Closeable progress = progressSeconds > 0 ? stats.reportProgress(System.err, progressSeconds * 1000L) : null;
+        SolutionCache cache = null;
+        try {
+            if (dimacs) {
+                long started = System.nanoTime();
+                Cnf cnf = Dimacs.read(puzzleInput);
+                stats.addTime(SolverStats.Phase.PARSE, System.nanoTime() - started);
+                Preprocessor preprocessor = preprocess ? new Preprocessor(cnf) : null;
+                if (preprocessor != null) cnf = preprocess(preprocessor, stats, showStats);
+                boolean satisfied;
+                if (portfolio >= 0) {
+                    Portfolio runner = new Portfolio(portfolio, share);
+                    runner.setStats(stats);
+                    dpll = runner.solve(cnf);
+                    satisfied = runner.isSatisfied();
+                } else if (cubes >= 0) {
+                    CubeAndConquer runner = new CubeAndConquer(cubes);
+                    runner.setStats(stats);
+                    dpll = runner.solve(cnf);
+                    satisfied = runner.isSatisfied();
+                    if (showStats) System.err.println("c cubes " + runner.getNumCubes() + " refuted " + runner.getRefutedCubes());
+                } else {
+                    dpll.addClauses(cnf);
+                    satisfied = dpll.solve();
+                }
+                if (satisfied && preprocessor != null) preprocessor.extendModel(dpll);
+                dpll.writeCompetitionOutput(satisfied, System.out);
+                return;
+            }
+            FrontEnd frontEnd = new FrontEnd();
+            BackEnd backEnd = new BackEnd();
+            frontEnd.setSymmetryBreaking(symmetry);
+            frontEnd.setAtMostOne(atMostOne);
+            frontEnd.setReachabilityPruning(prune);
+            frontEnd.setThreads(encodeThreads);
+            if (bitboard) {
+                solveOnBitboards(puzzleInput, frontEnd, stats, showStats, maxPegs);
+                return;
+            }
+            if (maxPegs > 0) {
+                solveIncrementally(puzzleInput, frontEnd, backEnd, dpll, maxPegs);
+                return;
+            }
+            String puzzleOutput = puzzleInput + "_Clauses";
+            String dpllOutput = puzzleOutput + "_DPLL_output";
+            SolutionCache.Query query = null;
+            if (cacheFile != null) {
+                cache = new SolutionCache(SolutionCache.DEFAULT_CAPACITY, cacheFile);
+                query = SolutionCache.query(puzzleInput);
+                List<String> cached = cache.get(query);
+                if (cached != null) {
+                    backEnd.writePath(cached.isEmpty() ? null : cached, dpllOutput + "_Final_Path");
+                    return;
+                }
+            }
+            // A plain solve takes the clauses straight from the front end, only the symbols are kept.
+            boolean streamed = !dump && !preprocess && portfolio < 0 && cubes < 0 && !all && !countOnly;
+            long started = System.nanoTime();
+            Cnf cnf;
+            if (streamed) {
+                cnf = new Cnf();
+                frontEnd.encode(puzzleInput, dpll, cnf);
+                dpll.passSymbols(cnf);
+            } else {
+                cnf = frontEnd.encode(puzzleInput);
+            }
+            stats.addTime(SolverStats.Phase.ENCODE, System.nanoTime() - started);
+            backEnd.setHoleMap(frontEnd.getHoleMap());
+            if (dump) {
+                cnf.write(puzzleOutput);
+                Dimacs.write(cnf, puzzleOutput + ".cnf");
+            }
+            Preprocessor preprocessor = preprocess ? new Preprocessor(cnf) : null;
+            if (preprocessor != null && (all || countOnly)) {
+                List<String> symbols = cnf.getSymbols();
+                for (int atom = 1; atom < symbols.size(); atom++) {
+                    if (symbols.get(atom) != null && symbols.get(atom).startsWith("J")) preprocessor.freeze(atom);
+                }
+            }
+            Cnf simplified = preprocessor != null ? preprocess(preprocessor, stats, showStats) : cnf;
+            if (all || countOnly) {
+                dpll.addClauses(simplified);
+                SolutionEnumerator enumerator = new SolutionEnumerator(dpll, cnf.getSymbols(), backEnd);
+                enumerator.setPreprocessor(preprocessor);
+                enumerator.setLimit(limit);
+                enumerate(enumerator, all ? puzzleInput + "_All_Paths" : null);
+                return;
+            }
+            boolean satisfied;
+            if (portfolio >= 0) {
+                Portfolio runner = new Portfolio(portfolio, share);
+                runner.setStats(stats);
+                dpll = runner.solve(simplified);
+                satisfied = runner.isSatisfied();
+            } else if (cubes >= 0) {
+                CubeAndConquer runner = new CubeAndConquer(cubes);
+                runner.setStats(stats);
+                dpll = runner.solve(simplified);
+                satisfied = runner.isSatisfied();
+                if (showStats) System.err.println("c cubes " + runner.getNumCubes() + " refuted " + runner.getRefutedCubes());
+            } else {
+                if (!streamed) dpll.addClauses(simplified);
+                satisfied = dpll.solve();
+            }
+            if (satisfied && preprocessor != null) preprocessor.extendModel(dpll);
+            if (dump) dpll.writeOutput(cnf, satisfied, dpllOutput);
+            started = System.nanoTime();
+            List<String> path = backEnd.generatePath(cnf, dpll, satisfied, dpllOutput + "_Final_Path");
+            stats.addTime(SolverStats.Phase.DECODE, System.nanoTime() - started);
+            if (cache != null) cache.put(query, path);
+        } finally {
+            if (cache != null) cache.close();
+            if (progress != null) progress.close();
+            if (showStats) System.err.println(stats.summary());
+        }
+    }
+
+    /*
+     * Runs the preprocessor, timing it, and returns the simplified clauses.
+     */
+    private static Cnf preprocess(Preprocessor preprocessor, SolverStats stats, boolean showStats) {
+        long started = System.nanoTime();
+        Cnf simplified = preprocessor.simplify();
+        stats.addTime(SolverStats.Phase.PREPROCESS, System.nanoTime() - started);
+        if (showStats) System.err.println(preprocessor.summary());
+        return simplified;
+    }
+
+    /*
+     * Streams every path to output, one line of jumps per path, or only counts them if output is null.
+     * The number of paths is printed to standard output.
+     */
+    private static void enumerate(SolutionEnumerator enumerator, String output) throws IOException {
+        if (output == null) {
+            System.out.println(enumerator.enumerate(null));
+            return;
+        }
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(output))) {
+            enumerator.enumerate(path -> {
+                try {
+                    bw.write(String.join(" ", path));
+                    bw.newLine();
+                    bw.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        System.out.println(enumerator.getCount());
+    }
+
+    /*
+     * Solves the puzzle with the bitboard engine and writes the path where the SAT route would: to
+     * X_Clauses_DPLL_output_Final_Path, or to X_Incremental_Path when maxPegs is set.
+     */
+    private static void solveOnBitboards(String puzzleInput, FrontEnd frontEnd, SolverStats stats, boolean showStats, int maxPegs)
+            throws IOException {
+        frontEnd.readPuzzle(puzzleInput);
+        BitboardSolver solver = new BitboardSolver(frontEnd.getNumHoles(), frontEnd.getInitialHole(), frontEnd.getTriples());
+        long started = System.nanoTime();
+        List<String> path = solver.solve(Math.max(maxPegs, 1));
+        stats.addTime(SolverStats.Phase.SOLVE, System.nanoTime() - started);
+        if (path != null && path.isEmpty()) path = null;
+        if (path != null) {
+            for (int t = 0; t < path.size(); t++) path.set(t, BackEnd.mapHoles(path.get(t), frontEnd.getHoleMap()));
+        }
+        if (showStats) System.err.println("c bitboard nodes " + solver.getNodes() + " dead hits " + solver.getDeadHits());
+        String output = maxPegs > 0 ? puzzleInput + "_Incremental_Path" : puzzleInput + "_Clauses_DPLL_output_Final_Path";
+        new BackEnd().writePath(path, output);
+    }
+
+    /*
+     * Finds the shortest plan that leaves at most maxPegs pegs and writes it to X_Incremental_Path.
+     * The encoding is extended one timepoint at a time on the same solver, each horizon's goal is
+     * tried as an assumption and retired with a unit clause when it fails.
+     */
+    private static void solveIncrementally(String puzzleInput, FrontEnd frontEnd, BackEnd backEnd, DPLL dpll, int maxPegs)
+            throws IOException {
+        frontEnd.readPuzzle(puzzleInput);
+        backEnd.setHoleMap(frontEnd.getHoleMap());
+        frontEnd.startHorizon(dpll);
+        int numHoles = frontEnd.getNumHoles();
+        // Every jump removes one peg, so a horizon shorter than this cannot reach the goal.
+        while (frontEnd.horizon() < numHoles - maxPegs) frontEnd.extendHorizon(dpll);
+        List<String> path = null;
+        while (true) {
+            int goal = frontEnd.addGoal(dpll, maxPegs);
+            if (dpll.solve(goal)) {
+                path = backEnd.decodePath(frontEnd.getSymbols(), dpll);
+                break;
+            }
+            dpll.addClause(-goal);
+            // At most numHoles - 2 jumps are possible, one peg always stays.
+            if (frontEnd.horizon() >= numHoles - 1) break;
+            frontEnd.extendHorizon(dpll);
+        }
+        backEnd.writePath(path, puzzleInput + "_Incremental_Path");
+    }
+
+    /*
+     * At-most-one encoding for an -amo argument, or null if the name is unknown.
+     */
+    static AtMostOne atMostOne(String name) {
+        for (AtMostOne encoding : AtMostOne.values()) {
+            if (encoding.name().equalsIgnoreCase(name)) return encoding;
+        }
+        return null;
+    }
+
+    /*
+     * Decision heuristic for a -heuristic argument, or null if the name is unknown.
+     */
+    static BranchingHeuristic heuristic(String name) {
+        switch (name) {
+            case "vsids":
+                return new VsidsHeuristic();
+            case "jw":
+                return new JeroslowWangHeuristic();
+            case "static":
+                return new StaticOrderHeuristic();
+            default:
+                return null;
+        }
     }
 }
@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Portfolio mode of the DPLL program.
+ * Runs differently configured solvers on the same clauses, one per thread, and keeps the answer of
+ * whichever finishes first; the others are stopped. Optionally the solvers share their short learned
+ * clauses through a ClauseExchange.
+ */
+public class Portfolio {
+    private static final int SHARED_CLAUSE_MAX_SIZE = 8;
+    private static final int EXCHANGE_CAPACITY = 1 << 14;
+
+    private final int numWorkers;
+    private final boolean shareClauses;
+    private boolean satisfied;
+    private SolverStats stats;
+
+    /*
+     * numWorkers solvers are started, 0 means one per available processor.
+     */
+    public Portfolio(int numWorkers, boolean shareClauses) {
+        this.numWorkers = numWorkers > 0 ? numWorkers : Runtime.getRuntime().availableProcessors();
+        this.shareClauses = shareClauses;
+    }
+
+    /*
+     * Stats that the stats of every solver are included in while they run, see SolverStats.include.
+     */
+    public void setStats(SolverStats stats) {
+        this.stats = stats;
+    }
+
+    /*
+     * Solves cnf and returns the solver that finished first, its model can be read as usual when
+     * isSatisfied is true.
+     */
+    public DPLL solve(Cnf cnf) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(numWorkers);
+        CompletionService<DPLL> finished = new ExecutorCompletionService<>(pool);
+        ClauseExchange exchange = shareClauses ? new ClauseExchange(EXCHANGE_CAPACITY, SHARED_CLAUSE_MAX_SIZE) : null;
+        List<DPLL> solvers = new ArrayList<>();
+        for (int i = 0; i < numWorkers; i++) {
+            DPLL dpll = new DPLL();
+            configure(dpll, i);
+            if (exchange != null) dpll.setClauseExchange(exchange, i);
+            if (stats != null) stats.include(dpll.getStats());
+            solvers.add(dpll);
+        }
+        final boolean[] results = new boolean[numWorkers];
+        for (int i = 0; i < numWorkers; i++) {
+            final int id = i;
+            finished.submit(() -> {
+                DPLL dpll = solvers.get(id);
+                dpll.addClauses(cnf);
+                results[id] = dpll.solve();
+                return dpll;
+            });
+        }
+        DPLL winner = null;
+        try {
+            for (int i = 0; i < numWorkers && winner == null; i++) {
+                try {
+                    DPLL dpll = finished.take().get();
+                    if (!dpll.isStopped()) winner = dpll;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Portfolio solver failed", e.getCause());
+                }
+            }
+        } finally {
+            for (DPLL dpll : solvers) dpll.stop();
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        satisfied = winner != null && results[solvers.indexOf(winner)];
+        return winner;
+    }
+
+    public boolean isSatisfied() {
+        return satisfied;
+    }
+
+    /*
+     * Configuration of the i-th solver. The first few cover the heuristics and restart policies,
+     * the rest are seeded variants of the strongest ones.
+     */
+    private static void configure(DPLL dpll, int i) {
+        switch (i) {
+            case 0:
+                dpll.setCdcl(true);
+                break;
+            case 1:
+                dpll.setCdcl(true);
+                dpll.setHeuristic(new JeroslowWangHeuristic());
+                break;
+            case 2:
+                dpll.setCdcl(true);
+                dpll.setLubyRestarts(false);
+                break;
+            case 3:
+                dpll.setCdcl(false);
+                break;
+            case 4:
+                dpll.setCdcl(true);
+                dpll.setHeuristic(new StaticOrderHeuristic());
+                break;
+            default:
+                dpll.setCdcl(true);
+                dpll.setLubyRestarts(i % 2 == 0);
+                if (i % 3 == 0) dpll.setHeuristic(new JeroslowWangHeuristic());
+                dpll.setSeed(i);
+                break;
+        }
+    }
+}
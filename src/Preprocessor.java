@@ -0,0 +1,536 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Preprocessing of a formula before it is solved.
+ * The preprocessor simplifies a Cnf with unit propagation, equivalent literal substitution, subsumption
+ * and self-subsuming resolution, bounded variable elimination and failed literal probing, and keeps what
+ * it removed so a model of the simplified formula can be extended to a model of the original one.
+ *
+ * Every clause that leaves the formula while it still constrains an atom that leaves with it is pushed on
+ * a reconstruction stack together with its pivot, the literal of that atom. extendModel walks the stack
+ * from the top and makes the pivot true in every pushed clause the model does not satisfy. Atom numbers
+ * and symbols are kept, so the back end decodes the extended model as usual.
+ */
+public class Preprocessor {
+    // Bounded variable elimination only tries atoms with few occurrences and short resolvents.
+    private static final int ELIMINATION_MAX_OCCURRENCES = 10;
+    private static final int ELIMINATION_MAX_RESOLVENT = 16;
+    // Literals compared by subsumption and strengthening per round.
+    private static final long SUBSUMPTION_BUDGET = 50000000L;
+    private static final int ROUNDS = 2;
+
+    private final Cnf input;
+    private final int numVars;
+    // Clauses as signed atom numbers, null once removed.
+    private final List<int[]> clauses = new ArrayList<>();
+    // occurrences[code] lists the clauses that contained the literal when they were added or last changed.
+    // Entries go stale as clauses are removed or strengthened and are dropped by liveOccurrences.
+    private int[][] occurrences;
+    private int[] occurrenceCount;
+    // Top level assignment indexed by atom: -1 unassigned, 0 false, 1 true.
+    private final int[] value;
+    private final boolean[] eliminated;
+    private final boolean[] frozen;
+    private final boolean[] mark;
+    private final int[] unitQueue;
+    private int unitHead;
+    private int unitTail;
+    // Reconstruction stack: the literals of each clause, then its size, then its pivot.
+    private int[] stack = new int[1024];
+    private int stackSize;
+    private boolean unsatisfiable;
+    private volatile boolean stopRequested;
+    private int numEquivalences;
+    private int numEliminated;
+    private int numFailed;
+    private int numSubsumed;
+    private int numStrengthened;
+
+    public Preprocessor(Cnf input) {
+        this.input = input;
+        numVars = input.getNumVars();
+        occurrences = new int[2 * (numVars + 1)][];
+        occurrenceCount = new int[2 * (numVars + 1)];
+        value = new int[numVars + 1];
+        Arrays.fill(value, -1);
+        eliminated = new boolean[numVars + 1];
+        frozen = new boolean[numVars + 1];
+        mark = new boolean[2 * (numVars + 1)];
+        unitQueue = new int[numVars + 1];
+        int[] literals = input.getLiterals();
+        for (int i = 0; i < input.getNumClauses(); i++) {
+            add(Arrays.copyOfRange(literals, input.clauseStart(i), input.clauseEnd(i)));
+        }
+    }
+
+    /*
+     * Keeps an atom in the simplified formula: it is neither resolved away nor replaced by an equivalent
+     * literal, and a value the simplifications fix it to is kept as a unit clause. Clauses added later
+     * to a solver of the simplified formula can then mention it, like the blocking clauses of an
+     * enumeration.
+     */
+    public void freeze(int atom) {
+        if (atom <= numVars) frozen[atom] = true;
+    }
+
+    /*
+     * Runs the simplifications and returns the simplified formula, with the symbols of the input.
+     * An unsatisfiable formula comes back as a single empty clause.
+     */
+    public Cnf simplify() {
+        for (int round = 0; round < ROUNDS && !unsatisfiable && !stopRequested; round++) {
+            propagate();
+            if (!unsatisfiable && !stopRequested) substituteEquivalences();
+            if (!unsatisfiable && !stopRequested) subsume();
+            if (!unsatisfiable && !stopRequested) eliminateVariables();
+            if (!unsatisfiable && !stopRequested) probe();
+        }
+        // A stop can leave units queued, their clauses go before the output is built.
+        propagate();
+        Cnf output = new Cnf();
+        List<String> symbols = input.getSymbols();
+        for (int atom = 1; atom < symbols.size(); atom++) {
+            if (symbols.get(atom) != null) output.setSymbol(atom, symbols.get(atom));
+        }
+        if (unsatisfiable) {
+            output.addClause();
+            return output;
+        }
+        for (int[] c : clauses) {
+            if (c != null) output.addClause(c);
+        }
+        for (int v = 1; v <= numVars; v++) {
+            if (frozen[v] && value[v] != -1) output.addClause(value[v] == 1 ? v : -v);
+        }
+        return output;
+    }
+
+    /*
+     * Extends the last model of a solver of the simplified formula to every atom of the input formula and
+     * stores it back in the solver.
+     */
+    public void extendModel(DPLL solver) {
+        int[] model = new int[numVars + 1];
+        for (int v = 1; v <= numVars; v++) model[v] = solver.modelValue(v) == 1 ? 1 : 0;
+        int k = stackSize;
+        while (k > 0) {
+            int pivot = stack[--k];
+            int size = stack[--k];
+            k -= size;
+            boolean satisfied = false;
+            for (int i = k; i < k + size && !satisfied; i++) {
+                satisfied = model[Math.abs(stack[i])] == (stack[i] > 0 ? 1 : 0);
+            }
+            if (!satisfied) model[Math.abs(pivot)] = pivot > 0 ? 1 : 0;
+        }
+        for (int v = 1; v <= numVars; v++) solver.setModelValue(v, model[v]);
+    }
+
+    /*
+     * Asks simplify, possibly running on another thread, to finish early. The clauses it returns then are
+     * only partly simplified, but the model can still be extended as usual.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /*
+     * What the simplifications did, as a "c" comment line.
+     */
+    public String summary() {
+        int remaining = 0;
+        for (int[] c : clauses) {
+            if (c != null) remaining++;
+        }
+        int units = unitTail;
+        return "c preprocess clauses " + input.getNumClauses() + " -> " + remaining + " units " + units
+                + " failed " + numFailed + " equivalences " + numEquivalences + " eliminated " + numEliminated
+                + " subsumed " + numSubsumed + " strengthened " + numStrengthened;
+    }
+
+    /*
+     * Adds a clause simplified against the top level assignment. Units are queued instead of stored.
+     */
+    private void add(int[] lits) {
+        int[] c = new int[lits.length];
+        int n = 0;
+        for (int l : lits) {
+            int val = litValue(l);
+            if (val == 1) return;
+            if (val == 0) continue;
+            boolean duplicate = false;
+            for (int k = 0; k < n; k++) {
+                if (c[k] == l) duplicate = true;
+                if (c[k] == -l) return; // Tautology.
+            }
+            if (!duplicate) c[n++] = l;
+        }
+        if (n == 0) {
+            unsatisfiable = true;
+        } else if (n == 1) {
+            enqueue(c[0]);
+        } else {
+            c = Arrays.copyOf(c, n);
+            clauses.add(c);
+            for (int l : c) occur(l, clauses.size() - 1);
+        }
+    }
+
+    /*
+     * Makes a literal true at the top level, it is pushed as a unit clause for the reconstruction.
+     */
+    private void enqueue(int l) {
+        int val = litValue(l);
+        if (val == 0) unsatisfiable = true;
+        if (val != -1) return;
+        value[Math.abs(l)] = l > 0 ? 1 : 0;
+        unitQueue[unitTail++] = l;
+        push(l, new int[]{l});
+    }
+
+    /*
+     * Top level unit propagation: clauses with a true literal go, false literals are dropped.
+     */
+    private void propagate() {
+        while (unitHead < unitTail && !unsatisfiable) {
+            int l = unitQueue[unitHead++];
+            for (int i : liveOccurrences(l)) clauses.set(i, null);
+            for (int i : liveOccurrences(-l)) strengthen(i, -l);
+        }
+    }
+
+    /*
+     * Removes literal x from clause i, a clause left with one literal becomes a unit.
+     */
+    private void strengthen(int i, int x) {
+        int[] c = clauses.get(i);
+        int[] s = new int[c.length - 1];
+        int n = 0;
+        for (int l : c) {
+            if (l != x) s[n++] = l;
+        }
+        if (n == 1) {
+            clauses.set(i, null);
+            enqueue(s[0]);
+        } else {
+            clauses.set(i, s);
+        }
+    }
+
+    /*
+     * Equivalent literal substitution. Literals in one strongly connected component of the binary
+     * implication graph are equivalent; every atom is replaced by the literal of the smallest atom of its
+     * component, and the two binary clauses of the equivalence are pushed for the reconstruction.
+     */
+    private void substituteEquivalences() {
+        int numCodes = 2 * (numVars + 1);
+        // Implication graph in compressed rows: clause (a v b) gives -a -> b and -b -> a.
+        int[] degree = new int[numCodes + 1];
+        for (int[] c : clauses) {
+            if (c == null || c.length != 2) continue;
+            degree[code(-c[0])]++;
+            degree[code(-c[1])]++;
+        }
+        int[] first = new int[numCodes + 1];
+        for (int code = 0; code < numCodes; code++) first[code + 1] = first[code] + degree[code];
+        int[] edges = new int[first[numCodes]];
+        int[] fill = Arrays.copyOf(first, numCodes);
+        for (int[] c : clauses) {
+            if (c == null || c.length != 2) continue;
+            edges[fill[code(-c[0])]++] = code(c[1]);
+            edges[fill[code(-c[1])]++] = code(c[0]);
+        }
+        int[] component = stronglyConnectedComponents(numCodes, first, edges);
+        // Representative of each component: its literal with the smallest atom.
+        int[] representative = new int[numCodes];
+        Arrays.fill(representative, 0);
+        for (int v = 1; v <= numVars; v++) {
+            for (int l : new int[]{v, -v}) {
+                if (representative[component[code(l)]] == 0) representative[component[code(l)]] = l;
+            }
+        }
+        for (int v = 1; v <= numVars; v++) {
+            if (component[code(v)] == component[code(-v)]) {
+                unsatisfiable = true;
+                return;
+            }
+        }
+        for (int v = 1; v <= numVars; v++) {
+            int r = representative[component[code(v)]];
+            if (Math.abs(r) == v || value[v] != -1 || eliminated[v] || frozen[v]) continue;
+            // A representative fixed already has its unit below on the stack, v takes its value instead.
+            if (litValue(r) != -1) {
+                enqueue(litValue(r) == 1 ? v : -v);
+                if (unsatisfiable) return;
+                continue;
+            }
+            substitute(v, r);
+            if (unsatisfiable) return;
+        }
+        propagate();
+    }
+
+    /*
+     * Replaces atom v by the literal r it is equivalent to.
+     */
+    private void substitute(int v, int r) {
+        eliminated[v] = true;
+        numEquivalences++;
+        push(v, new int[]{v, -r});
+        push(-v, new int[]{-v, r});
+        for (int l : new int[]{v, -v}) {
+            for (int i : liveOccurrences(l)) {
+                int[] c = clauses.get(i);
+                clauses.set(i, null);
+                int[] replaced = c.clone();
+                for (int k = 0; k < replaced.length; k++) {
+                    if (replaced[k] == v) replaced[k] = r;
+                    if (replaced[k] == -v) replaced[k] = -r;
+                }
+                add(replaced);
+            }
+        }
+    }
+
+    /*
+     * Tarjan's algorithm without recursion. Returns the component of every node.
+     */
+    private static int[] stronglyConnectedComponents(int numNodes, int[] first, int[] edges) {
+        int[] index = new int[numNodes];
+        int[] low = new int[numNodes];
+        int[] component = new int[numNodes];
+        Arrays.fill(index, -1);
+        boolean[] onStack = new boolean[numNodes];
+        int[] stack = new int[numNodes];
+        int stackSize = 0;
+        int[] callNode = new int[numNodes];
+        int[] callEdge = new int[numNodes];
+        int counter = 0;
+        int numComponents = 0;
+        for (int root = 0; root < numNodes; root++) {
+            if (index[root] != -1) continue;
+            int depth = 0;
+            callNode[0] = root;
+            callEdge[0] = first[root];
+            index[root] = low[root] = counter++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            while (depth >= 0) {
+                int node = callNode[depth];
+                if (callEdge[depth] < first[node + 1]) {
+                    int next = edges[callEdge[depth]++];
+                    if (index[next] == -1) {
+                        index[next] = low[next] = counter++;
+                        stack[stackSize++] = next;
+                        onStack[next] = true;
+                        depth++;
+                        callNode[depth] = next;
+                        callEdge[depth] = first[next];
+                    } else if (onStack[next]) {
+                        low[node] = Math.min(low[node], index[next]);
+                    }
+                    continue;
+                }
+                if (low[node] == index[node]) {
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        onStack[member] = false;
+                        component[member] = numComponents;
+                    } while (member != node);
+                    numComponents++;
+                }
+                depth--;
+                if (depth >= 0) low[callNode[depth]] = Math.min(low[callNode[depth]], low[node]);
+            }
+        }
+        return component;
+    }
+
+    /*
+     * Subsumption and self-subsuming resolution. A clause C removes every clause that contains it, and
+     * for each literal l of C removes -l from every clause that contains C with l negated.
+     */
+    private void subsume() {
+        long budget = SUBSUMPTION_BUDGET;
+        for (int i = 0; i < clauses.size() && budget > 0 && !unsatisfiable && !stopRequested; i++) {
+            int[] c = clauses.get(i);
+            if (c == null) continue;
+            for (int l : c) mark[code(l)] = true;
+            int rarest = c[0];
+            for (int l : c) {
+                if (occurrenceCount[code(l)] < occurrenceCount[code(rarest)]) rarest = l;
+            }
+            for (int j : liveOccurrences(rarest)) {
+                int[] d = clauses.get(j);
+                if (j == i || d.length < c.length) continue;
+                budget -= d.length;
+                if (countMarked(d) == c.length) {
+                    clauses.set(j, null);
+                    numSubsumed++;
+                }
+            }
+            for (int l : c) {
+                mark[code(l)] = false;
+                mark[code(-l)] = true;
+                for (int j : liveOccurrences(-l)) {
+                    int[] d = clauses.get(j);
+                    if (d == null || d.length < c.length) continue;
+                    budget -= d.length;
+                    if (countMarked(d) == c.length) {
+                        strengthen(j, -l);
+                        numStrengthened++;
+                    }
+                }
+                mark[code(-l)] = false;
+                mark[code(l)] = true;
+            }
+            for (int l : c) mark[code(l)] = false;
+            propagate();
+        }
+    }
+
+    private int countMarked(int[] d) {
+        int count = 0;
+        for (int l : d) {
+            if (mark[code(l)]) count++;
+        }
+        return count;
+    }
+
+    /*
+     * Bounded variable elimination. An atom whose clauses can be replaced by all their non-tautological
+     * resolvents on it, without the formula getting more clauses, is resolved away.
+     */
+    private void eliminateVariables() {
+        for (int v = 1; v <= numVars && !unsatisfiable && !stopRequested; v++) {
+            if (value[v] != -1 || eliminated[v] || frozen[v]) continue;
+            int[] pos = liveOccurrences(v);
+            int[] neg = liveOccurrences(-v);
+            if (pos.length + neg.length == 0) continue;
+            if (pos.length > ELIMINATION_MAX_OCCURRENCES || neg.length > ELIMINATION_MAX_OCCURRENCES) continue;
+            List<int[]> resolvents = new ArrayList<>();
+            boolean bounded = true;
+            for (int p = 0; p < pos.length && bounded; p++) {
+                for (int q = 0; q < neg.length && bounded; q++) {
+                    int[] r = resolve(clauses.get(pos[p]), clauses.get(neg[q]), v);
+                    if (r == null) continue;
+                    bounded = r.length <= ELIMINATION_MAX_RESOLVENT && resolvents.size() < pos.length + neg.length;
+                    resolvents.add(r);
+                }
+            }
+            if (!bounded) continue;
+            eliminated[v] = true;
+            numEliminated++;
+            for (int i : pos) {
+                push(v, clauses.get(i));
+                clauses.set(i, null);
+            }
+            for (int i : neg) {
+                push(-v, clauses.get(i));
+                clauses.set(i, null);
+            }
+            for (int[] r : resolvents) add(r);
+            propagate();
+        }
+    }
+
+    /*
+     * Resolvent of c (containing v) and d (containing -v), or null if it is a tautology.
+     */
+    private static int[] resolve(int[] c, int[] d, int v) {
+        int[] r = new int[c.length + d.length - 2];
+        int n = 0;
+        for (int l : c) {
+            if (l != v) r[n++] = l;
+        }
+        int fromC = n;
+        for (int l : d) {
+            if (l == -v) continue;
+            boolean duplicate = false;
+            for (int k = 0; k < fromC; k++) {
+                if (r[k] == -l) return null;
+                if (r[k] == l) duplicate = true;
+            }
+            if (!duplicate) r[n++] = l;
+        }
+        return Arrays.copyOf(r, n);
+    }
+
+    /*
+     * Failed literal probing. Each literal of a remaining atom is assumed in turn on a DPLL solver of the
+     * current clauses; if propagation runs into a conflict the literal is false at the top level.
+     */
+    private void probe() {
+        DPLL prober = new DPLL();
+        for (int[] c : clauses) {
+            if (c != null) prober.addClause(c);
+        }
+        for (int v = 1; v <= numVars && !unsatisfiable && !stopRequested; v++) {
+            if (value[v] != -1 || eliminated[v] || occurrenceCount[code(v)] + occurrenceCount[code(-v)] == 0) continue;
+            for (int l : new int[]{v, -v}) {
+                if (!prober.probe(l)) {
+                    numFailed++;
+                    enqueue(-l);
+                    prober.addClause(-l);
+                    break;
+                }
+            }
+        }
+        propagate();
+    }
+
+    /*
+     * Live clauses containing literal l. Stale entries are dropped from its occurrence list on the way.
+     */
+    private int[] liveOccurrences(int l) {
+        int code = code(l);
+        int[] list = occurrences[code];
+        int n = 0;
+        for (int k = 0; k < occurrenceCount[code]; k++) {
+            int[] c = clauses.get(list[k]);
+            if (c != null && contains(c, l)) list[n++] = list[k];
+        }
+        occurrenceCount[code] = n;
+        return n == 0 ? new int[0] : Arrays.copyOf(list, n);
+    }
+
+    private void occur(int l, int i) {
+        int code = code(l);
+        if (occurrences[code] == null) {
+            occurrences[code] = new int[4];
+        } else if (occurrenceCount[code] == occurrences[code].length) {
+            occurrences[code] = Arrays.copyOf(occurrences[code], occurrenceCount[code] * 2);
+        }
+        occurrences[code][occurrenceCount[code]++] = i;
+    }
+
+    private void push(int pivot, int[] clause) {
+        if (stackSize + clause.length + 2 > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stackSize + clause.length + 2, stack.length * 2));
+        }
+        System.arraycopy(clause, 0, stack, stackSize, clause.length);
+        stackSize += clause.length;
+        stack[stackSize++] = clause.length;
+        stack[stackSize++] = pivot;
+    }
+
+    private static boolean contains(int[] c, int l) {
+        for (int x : c) {
+            if (x == l) return true;
+        }
+        return false;
+    }
+
+    private int litValue(int l) {
+        int val = value[Math.abs(l)];
+        if (val == -1) return -1;
+        return l > 0 ? val : 1 - val;
+    }
+
+    private static int code(int l) {
+        return l > 0 ? 2 * l : -2 * l + 1;
+    }
+}
@@ -0,0 +1,239 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of solved puzzles.
+ * A puzzle is keyed by a canonical form of its board and initial hole. The triples are normalized and sorted,
+ * so the order of the input lines and the direction of each triple do not matter. The initial hole
+ * is moved to the smallest hole an automorphism of the board maps it to. Puzzles whose start holes are
+ * symmetric therefore share one key. The path is stored in the canonical numbering and mapped back
+ * through the automorphism of each query. Boards that only differ by a renumbering of their holes get
+ * different keys.
+ *
+ * The most recently used paths are kept in memory, up to a given number of entries. With an index file,
+ * every path is also appended to that file as a line "key<TAB>jumps" or "key<TAB>NO SOLUTION". Only
+ * the offset of each key is kept in memory, and a path is read back when the memory layer misses it,
+ * so the file survives restarts and can hold more entries than the memory layer. A key already in the
+ * file is not appended again, e.g. when two threads solved the same puzzle at once. If a file holds a
+ * key twice anyway, the last line wins.
+ *
+ * All methods are synchronized, so one cache can be shared by the threads of a batch.
+ */
+public class SolutionCache implements Closeable {
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final String NO_SOLUTION = "NO SOLUTION";
+
+    /**
+     * Canonical key of a puzzle and the automorphism that maps its holes to the canonical numbering.
+     */
+    public static class Query {
+        private final String key;
+        private final int[] toCanonical;
+        private final int[] fromCanonical;
+
+        Query(String key, int[] toCanonical) {
+            this.key = key;
+            this.toCanonical = toCanonical;
+            this.fromCanonical = new int[toCanonical.length];
+            for (int h = 1; h < toCanonical.length; h++) fromCanonical[toCanonical[h]] = h;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private final Map<String, List<String>> recent;
+    private final Map<String, Long> offsets = new HashMap<>();
+    private final RandomAccessFile index;
+    private long hits;
+    private long misses;
+
+    /*
+     * Cache holding up to capacity paths in memory and none on disk.
+     */
+    public SolutionCache(int capacity) {
+        this.recent = lru(capacity);
+        this.index = null;
+    }
+
+    /*
+     * Cache holding up to capacity paths in memory and every path in indexFile, which is created if it
+     * does not exist yet.
+     */
+    public SolutionCache(int capacity, String indexFile) throws IOException {
+        this.recent = lru(capacity);
+        this.index = new RandomAccessFile(new File(indexFile), "rw");
+        // end is the offset just after the last complete line. A last line without its newline was cut
+        // short by a crash, it is dropped.
+        long end = 0;
+        long pos = 0;
+        byte[] line = new byte[256];
+        int length = 0;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(indexFile), 1 << 16)) {
+            int b;
+            while ((b = in.read()) != -1) {
+                pos++;
+                if (b != '\n') {
+                    if (length == line.length) line = Arrays.copyOf(line, length * 2);
+                    line[length++] = (byte) b;
+                    continue;
+                }
+                int tab = 0;
+                while (tab < length && line[tab] != '\t') tab++;
+                if (tab > 0 && tab < length) offsets.put(new String(line, 0, tab, StandardCharsets.UTF_8), end);
+                end = pos;
+                length = 0;
+            }
+        }
+        index.setLength(end);
+    }
+
+    /*
+     * Reads a puzzle and computes its key.
+     */
+    public static Query query(String puzzle) throws IOException {
+        FrontEnd frontEnd = new FrontEnd();
+        frontEnd.readPuzzle(puzzle);
+        int numHoles = frontEnd.getNumHoles();
+        int initialHole = frontEnd.getInitialHole();
+        List<int[]> triples = frontEnd.getTriples();
+        int[] toCanonical = new int[numHoles + 1];
+        for (int h = 1; h <= numHoles; h++) toCanonical[h] = h;
+        for (int[] perm : new BoardSymmetry(numHoles, triples).getAutomorphisms()) {
+            if (perm[initialHole] < toCanonical[initialHole]) toCanonical = perm;
+        }
+        List<String> lines = new ArrayList<>();
+        for (int[] triple : triples) {
+            lines.add(Math.min(triple[0], triple[2]) + " " + triple[1] + " " + Math.max(triple[0], triple[2]));
+        }
+        Collections.sort(lines);
+        StringBuilder canonical = new StringBuilder();
+        canonical.append(numHoles).append(' ').append(toCanonical[initialHole]);
+        for (String line : lines) canonical.append('\n').append(line);
+        return new Query(sha256(canonical.toString()), toCanonical);
+    }
+
+    /*
+     * Path of a cached puzzle in the holes of the query, an empty list if it has no solution, and null if
+     * it is not cached.
+     */
+    public synchronized List<String> get(Query query) throws IOException {
+        List<String> canonical = recent.get(query.key);
+        if (canonical == null && offsets.containsKey(query.key)) {
+            canonical = parse(readLine(offsets.get(query.key)));
+            recent.put(query.key, canonical);
+        }
+        if (canonical == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return mapPath(canonical, query.fromCanonical);
+    }
+
+    /*
+     * Stores the path of a puzzle, given in the holes of the query, null or empty if it has no solution.
+     */
+    public synchronized void put(Query query, List<String> path) throws IOException {
+        // Another thread may have solved the same puzzle since this one missed it.
+        if (offsets.containsKey(query.key)) return;
+        List<String> canonical = path == null ? Collections.<String>emptyList() : mapPath(path, query.toCanonical);
+        recent.put(query.key, canonical);
+        if (index == null) return;
+        long offset = index.length();
+        index.seek(offset);
+        index.write((query.key + '\t' + format(canonical) + '\n').getBytes(StandardCharsets.UTF_8));
+        offsets.put(query.key, offset);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (index != null) index.close();
+    }
+
+    /*
+     * The index line starting at offset, without its newline, read a block at a time.
+     */
+    private String readLine(long offset) throws IOException {
+        byte[] block = new byte[4096];
+        byte[] line = new byte[block.length];
+        int length = 0;
+        index.seek(offset);
+        int read;
+        while ((read = index.read(block)) > 0) {
+            int newline = 0;
+            while (newline < read && block[newline] != '\n') newline++;
+            if (length + newline > line.length) line = Arrays.copyOf(line, Math.max(line.length * 2, length + newline));
+            System.arraycopy(block, 0, line, length, newline);
+            length += newline;
+            if (newline < read) break;
+        }
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, List<String>> lru(final int capacity) {
+        return new LinkedHashMap<String, List<String>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    private static List<String> mapPath(List<String> path, int[] holeMap) {
+        List<String> mapped = new ArrayList<>(path.size());
+        for (String jump : path) mapped.add(BackEnd.mapHoles(jump, holeMap));
+        return mapped;
+    }
+
+    private static String format(List<String> path) {
+        if (path.isEmpty()) return NO_SOLUTION;
+        StringBuilder sb = new StringBuilder();
+        for (String jump : path) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(jump);
+        }
+        return sb.toString();
+    }
+
+    private static List<String> parse(String line) {
+        String jumps = line.substring(line.indexOf('\t') + 1);
+        if (jumps.equals(NO_SOLUTION)) return Collections.emptyList();
+        return Arrays.asList(jumps.split(" "));
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
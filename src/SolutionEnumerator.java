@@ -0,0 +1,87 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Enumeration of every path of a puzzle.
+ * The solver is asked for a model again and again. After each model it gets a blocking clause, the
+ * negation of the Jump atoms true in that model, so the next model has a different jump sequence. The
+ * blocking clauses only mention Jump atoms. Two models that differ only in Peg or auxiliary atoms give
+ * the same path, so each path is found exactly once. The solver keeps its state between models, and the
+ * clauses it learned for one path still hold for the next.
+ *
+ * Paths are handed to a consumer as soon as they are found. Without a consumer, the paths are only
+ * counted and no path is decoded.
+ */
+public class SolutionEnumerator {
+    private final DPLL solver;
+    private final List<String> symbols;
+    private final BackEnd backEnd;
+    private final int[] jumpAtoms;
+    private Preprocessor preprocessor;
+    private long limit;
+    private long count;
+
+    /*
+     * Enumerates the models of solver, which holds the clauses whose symbols, indexed by atom, are given.
+     * Paths are decoded by backEnd.
+     */
+    public SolutionEnumerator(DPLL solver, List<String> symbols, BackEnd backEnd) {
+        this.solver = solver;
+        this.symbols = symbols;
+        this.backEnd = backEnd;
+        List<Integer> jumps = new ArrayList<>();
+        for (int atom = 1; atom < symbols.size(); atom++) {
+            String symbol = symbols.get(atom);
+            if (symbol != null && symbol.startsWith("J")) jumps.add(atom);
+        }
+        jumpAtoms = new int[jumps.size()];
+        for (int i = 0; i < jumpAtoms.length; i++) jumpAtoms[i] = jumps.get(i);
+    }
+
+    /*
+     * The solver holds clauses simplified by preprocessor, whose Jump atoms must have been frozen before
+     * it simplified them. Each model is extended before its path is decoded.
+     */
+    public void setPreprocessor(Preprocessor preprocessor) {
+        this.preprocessor = preprocessor;
+    }
+
+    /*
+     * Stops after limit paths, 0 for no limit.
+     */
+    public void setLimit(long limit) {
+        this.limit = limit;
+    }
+
+    /*
+     * Finds paths under the given assumptions until there are no more, the limit is reached or the solver
+     * is stopped. Each path is passed to consumer, or only counted if consumer is null. Returns the number
+     * of paths found by this call.
+     */
+    public long enumerate(Consumer<List<String>> consumer, int... assumptions) {
+        long found = 0;
+        int[] blocking = new int[jumpAtoms.length];
+        while ((limit == 0 || count < limit) && solver.solve(assumptions)) {
+            if (preprocessor != null && consumer != null) preprocessor.extendModel(solver);
+            int size = 0;
+            for (int atom : jumpAtoms) {
+                if (solver.modelValue(atom) == 1) blocking[size++] = -atom;
+            }
+            count++;
+            found++;
+            if (consumer != null) consumer.accept(backEnd.decodePath(symbols, solver));
+            // A model without jumps cannot be blocked, it is the only one.
+            if (size == 0) break;
+            solver.addClause(blocking, size);
+        }
+        return found;
+    }
+
+    /*
+     * Paths found so far by every call of enumerate.
+     */
+    public long getCount() {
+        return count;
+    }
+}
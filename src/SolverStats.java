@@ -0,0 +1,219 @@
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Search counters and phase timings of a solve.
+ * The DPLL program counts its decisions, unit propagations, pure literal eliminations, conflicts,
+ * backtracks, learned clauses, restarts and the deepest decision level it reached. The time spent in
+ * each phase of the pipeline, front end encoding, parsing, preprocessing, solving and back end decoding,
+ * is added by whoever runs that phase.
+ *
+ * The counters are plain fields written by the solving thread only, so counting costs no more than an
+ * increment. A progress line or a JMX client reading them from another thread sees values that may lag a
+ * little behind, which is fine for watching a long solve.
+ *
+ * Solvers running on other threads keep their own stats, which can be included in these with include.
+ * Every getter, and so the progress line and the MBean, then adds the included stats in when it is read.
+ */
+public class SolverStats implements SolverStatsMBean {
+    /**
+     * Phases of the pipeline that are timed.
+     */
+    public enum Phase {
+        ENCODE, PARSE, PREPROCESS, SOLVE, DECODE
+    }
+
+    long decisions;
+    long propagations;
+    long pureLiterals;
+    long conflicts;
+    long backtracks;
+    long learnedClauses;
+    long restarts;
+    int maxDepth;
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final List<SolverStats> included = new CopyOnWriteArrayList<>();
+
+    public SolverStats() {
+
+    }
+
+    /*
+     * Adds time spent in a phase, in nanoseconds.
+     */
+    public void addTime(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    /*
+     * Adds the counters and times of other to these, e.g. those of the solver that won a portfolio race.
+     */
+    public void add(SolverStats other) {
+        decisions += other.getDecisions();
+        propagations += other.getPropagations();
+        pureLiterals += other.getPureLiterals();
+        conflicts += other.getConflicts();
+        backtracks += other.getBacktracks();
+        learnedClauses += other.getLearnedClauses();
+        restarts += other.getRestarts();
+        maxDepth = Math.max(maxDepth, other.getMaxDepth());
+        for (Phase phase : Phase.values()) phaseNanos[phase.ordinal()] += other.getTime(phase);
+    }
+
+    /*
+     * Counts the counters and times of other in these from now on, as they are when read. Used for the
+     * stats of solvers that run on other threads, such as portfolio and cube and conquer workers.
+     */
+    public void include(SolverStats other) {
+        included.add(other);
+    }
+
+    /*
+     * Total time spent in a phase so far, in nanoseconds.
+     */
+    public long getTime(Phase phase) {
+        long nanos = phaseNanos[phase.ordinal()];
+        for (SolverStats other : included) nanos += other.getTime(phase);
+        return nanos;
+    }
+
+    @Override
+    public long getDecisions() {
+        long total = decisions;
+        for (SolverStats other : included) total += other.getDecisions();
+        return total;
+    }
+
+    @Override
+    public long getPropagations() {
+        long total = propagations;
+        for (SolverStats other : included) total += other.getPropagations();
+        return total;
+    }
+
+    @Override
+    public long getPureLiterals() {
+        long total = pureLiterals;
+        for (SolverStats other : included) total += other.getPureLiterals();
+        return total;
+    }
+
+    @Override
+    public long getConflicts() {
+        long total = conflicts;
+        for (SolverStats other : included) total += other.getConflicts();
+        return total;
+    }
+
+    @Override
+    public long getBacktracks() {
+        long total = backtracks;
+        for (SolverStats other : included) total += other.getBacktracks();
+        return total;
+    }
+
+    @Override
+    public long getLearnedClauses() {
+        long total = learnedClauses;
+        for (SolverStats other : included) total += other.getLearnedClauses();
+        return total;
+    }
+
+    @Override
+    public long getRestarts() {
+        long total = restarts;
+        for (SolverStats other : included) total += other.getRestarts();
+        return total;
+    }
+
+    @Override
+    public int getMaxDepth() {
+        int depth = maxDepth;
+        for (SolverStats other : included) depth = Math.max(depth, other.getMaxDepth());
+        return depth;
+    }
+
+    @Override
+    public long getEncodeMillis() {
+        return getTime(Phase.ENCODE) / 1000000;
+    }
+
+    @Override
+    public long getParseMillis() {
+        return getTime(Phase.PARSE) / 1000000;
+    }
+
+    @Override
+    public long getPreprocessMillis() {
+        return getTime(Phase.PREPROCESS) / 1000000;
+    }
+
+    @Override
+    public long getSolveMillis() {
+        return getTime(Phase.SOLVE) / 1000000;
+    }
+
+    @Override
+    public long getDecodeMillis() {
+        return getTime(Phase.DECODE) / 1000000;
+    }
+
+    /*
+     * One line with every counter, prefixed with "c " like a comment of the SAT competition output.
+     */
+    public String progressLine() {
+        return "c decisions " + getDecisions() + " propagations " + getPropagations() + " pure " + getPureLiterals()
+                + " conflicts " + getConflicts() + " backtracks " + getBacktracks() + " learned " + getLearnedClauses()
+                + " restarts " + getRestarts() + " depth " + getMaxDepth();
+    }
+
+    /*
+     * The progress line followed by one line per phase with its time.
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder(progressLine());
+        for (Phase phase : Phase.values()) {
+            sb.append("\nc ").append(phase.name().toLowerCase()).append(' ').append(getTime(phase) / 1000000).append(" ms");
+        }
+        return sb.toString();
+    }
+
+    /*
+     * Prints the progress line to out every periodMillis milliseconds, with the seconds elapsed since the
+     * call, until the returned handle is closed. The printing runs on a daemon thread.
+     */
+    public Closeable reportProgress(final PrintStream out, long periodMillis) {
+        final long started = System.nanoTime();
+        final Timer timer = new Timer("solver-progress", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                out.println(progressLine() + " elapsed " + (System.nanoTime() - started) / 1000000000 + "s");
+            }
+        }, periodMillis, periodMillis);
+        return timer::cancel;
+    }
+
+    /*
+     * Registers these stats with the platform MBean server as Peg:type=SolverStats,name=name, replacing
+     * stats registered earlier under the same name.
+     */
+    public void registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName("Peg:type=SolverStats,name=" + ObjectName.quote(name));
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            }
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register solver stats " + name, e);
+        }
+    }
+}
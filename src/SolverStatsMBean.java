@@ -0,0 +1,31 @@
+/**
+ * Management interface of SolverStats, so a running solve can be watched with JConsole or any other
+ * JMX client. Times are in milliseconds.
+ */
+public interface SolverStatsMBean {
+    long getDecisions();
+
+    long getPropagations();
+
+    long getPureLiterals();
+
+    long getConflicts();
+
+    long getBacktracks();
+
+    long getLearnedClauses();
+
+    long getRestarts();
+
+    int getMaxDepth();
+
+    long getEncodeMillis();
+
+    long getParseMillis();
+
+    long getPreprocessMillis();
+
+    long getSolveMillis();
+
+    long getDecodeMillis();
+}
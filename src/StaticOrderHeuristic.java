@@ -0,0 +1,58 @@
+/**
+ * Static branching order.
+ * Atoms are tried in increasing numeric order. When the symbol table is available, Jump atoms come
+ * first ordered by timepoint, then Peg atoms ordered by timepoint, so the search fixes the plan one
+ * step at a time from the start. Other atoms, such as auxiliary atoms, come last.
+ */
+public class StaticOrderHeuristic implements BranchingHeuristic {
+    private final VarHeap heap = new VarHeap();
+
+    public StaticOrderHeuristic() {
+
+    }
+
+    @Override
+    public void addAtom(int atom) {
+        heap.setScore(atom, -atom);
+        heap.insert(atom);
+    }
+
+    @Override
+    public void onClause(int[] codes, int start, int size) {
+
+    }
+
+    @Override
+    public void onConflict(int[] codes, int start, int size) {
+
+    }
+
+    @Override
+    public void onUnassign(int atom) {
+        heap.insert(atom);
+    }
+
+    @Override
+    public int pick(int[] values) {
+        while (!heap.isEmpty()) {
+            int atom = heap.removeMax();
+            if (values[atom] == -1) return atom;
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean usesSymbols() {
+        return true;
+    }
+
+    @Override
+    public void onSymbol(int atom, String symbol) {
+        // Symbols look like Jump(A,B,C,I) or Peg(H,I), the timepoint is the last argument.
+        int comma = symbol.lastIndexOf(',');
+        if (comma < 0 || !symbol.endsWith(")")) return;
+        int timepoint = Integer.parseInt(symbol.substring(comma + 1, symbol.length() - 1));
+        double group = symbol.startsWith("J") ? 0 : symbol.startsWith("P") ? 1 : 2;
+        heap.setScore(atom, -(group * 1e12 + timepoint * 1e6 + atom));
+    }
+}
@@ -0,0 +1,112 @@
+import java.util.Arrays;
+
+/**
+ * Binary max-heap of atoms ordered by a score per atom.
+ * Used by the branching heuristics so that picking the best unassigned atom costs O(log n)
+ * instead of a scan over every atom.
+ */
+public class VarHeap {
+    private double[] score = new double[1];
+    private int[] heap = new int[1];
+    private int[] position = new int[1]; // Index of each atom in heap, -1 if it is not in the heap.
+    private int size;
+
+    public VarHeap() {
+        position[0] = -1;
+    }
+
+    public double score(int atom) {
+        return score[atom];
+    }
+
+    /*
+     * Changes the score of an atom and restores the heap order around it.
+     */
+    public void setScore(int atom, double value) {
+        grow(atom);
+        double old = score[atom];
+        score[atom] = value;
+        if (position[atom] < 0) return;
+        if (value > old) {
+            up(position[atom]);
+        } else {
+            down(position[atom]);
+        }
+    }
+
+    /*
+     * Multiplies every score by the same factor, which keeps the heap order.
+     */
+    public void scaleAll(double factor) {
+        for (int i = 0; i < score.length; i++) score[i] *= factor;
+    }
+
+    public boolean contains(int atom) {
+        return atom < position.length && position[atom] >= 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void insert(int atom) {
+        grow(atom);
+        if (position[atom] >= 0) return;
+        if (size == heap.length) heap = Arrays.copyOf(heap, size * 2);
+        heap[size] = atom;
+        position[atom] = size;
+        up(size++);
+    }
+
+    /*
+     * Removes and returns the atom with the highest score.
+     */
+    public int removeMax() {
+        int top = heap[0];
+        position[top] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            position[heap[0]] = 0;
+            down(0);
+        }
+        return top;
+    }
+
+    private void up(int i) {
+        int atom = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (score[heap[parent]] >= score[atom]) break;
+            heap[i] = heap[parent];
+            position[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = atom;
+        position[atom] = i;
+    }
+
+    private void down(int i) {
+        int atom = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && score[heap[child + 1]] > score[heap[child]]) child++;
+            if (score[heap[child]] <= score[atom]) break;
+            heap[i] = heap[child];
+            position[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = atom;
+        position[atom] = i;
+    }
+
+    private void grow(int atom) {
+        if (atom < score.length) return;
+        int capacity = Math.max(atom + 1, score.length * 2);
+        int old = position.length;
+        score = Arrays.copyOf(score, capacity);
+        position = Arrays.copyOf(position, capacity);
+        Arrays.fill(position, old, capacity, -1);
+    }
+}
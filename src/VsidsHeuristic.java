@@ -0,0 +1,55 @@
+/**
+ * VSIDS branching heuristic.
+ * Every atom of a learned (or falsified) clause has its activity bumped, and all activities decay
+ * geometrically by growing the bump instead of shrinking the scores. The unassigned atom with the
+ * highest activity is picked from a heap.
+ */
+public class VsidsHeuristic implements BranchingHeuristic {
+    private static final double DECAY = 0.95;
+    private static final double RESCALE_LIMIT = 1e100;
+
+    private final VarHeap heap = new VarHeap();
+    private double increment = 1.0;
+
+    public VsidsHeuristic() {
+
+    }
+
+    @Override
+    public void addAtom(int atom) {
+        heap.insert(atom);
+    }
+
+    @Override
+    public void onClause(int[] codes, int start, int size) {
+
+    }
+
+    @Override
+    public void onConflict(int[] codes, int start, int size) {
+        for (int k = start; k < start + size; k++) {
+            int atom = codes[k] >> 1;
+            double activity = heap.score(atom) + increment;
+            heap.setScore(atom, activity);
+            if (activity > RESCALE_LIMIT) {
+                heap.scaleAll(1 / RESCALE_LIMIT);
+                increment /= RESCALE_LIMIT;
+            }
+        }
+        increment /= DECAY;
+    }
+
+    @Override
+    public void onUnassign(int atom) {
+        heap.insert(atom);
+    }
+
+    @Override
+    public int pick(int[] values) {
+        while (!heap.isEmpty()) {
+            int atom = heap.removeMax();
+            if (values[atom] == -1) return atom;
+        }
+        return 0;
+    }
+}
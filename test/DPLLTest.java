@@ -0,0 +1,47 @@
+/**
+ * Checks of the DPLL solver across repeated solves. Run with java DPLLTest; it throws AssertionError on
+ * the first failure.
+ */
+public class DPLLTest {
+
+    public static void main(String[] args) {
+        levelZeroConflictUnderAssumptions();
+        pureLiteralsWithNewAtoms();
+        System.out.println("DPLLTest passed");
+    }
+
+    /*
+     * A solve under assumptions learns a unit whose propagation fails at level 0, so the clauses are
+     * unsatisfiable and a later solve without assumptions must say so too.
+     */
+    private static void levelZeroConflictUnderAssumptions() {
+        DPLL solver = new DPLL();
+        solver.setCdcl(true);
+        for (int[] clause : new int[][]{{1, 5}, {-2}, {4, -5}, {3}, {4, -1}, {2, -1, -4}, {-4, -5}}) {
+            solver.addClause(clause);
+        }
+        check(!solver.solve(5, -5), "contradictory assumptions");
+        check(!solver.solve(), "unsatisfiable after a level 0 conflict under assumptions");
+    }
+
+    /*
+     * Pure literal elimination with atoms that only appear as an assumption, or in a clause that was
+     * already satisfied at level 0 when it was added.
+     */
+    private static void pureLiteralsWithNewAtoms() {
+        DPLL solver = new DPLL();
+        solver.setPureLiterals(true);
+        solver.addClause(1, 2);
+        check(solver.solve(-3), "atom only in an assumption");
+        check(solver.modelValue(3) == 0, "assumption holds in the model");
+        solver.addClause(4);
+        solver.addClause(4, 5, 6);
+        solver.addClause(-5, 7);
+        check(solver.solve(-6), "atom only in a satisfied clause");
+        check(solver.modelValue(4) == 1 && solver.modelValue(6) == 0, "units and assumptions hold in the model");
+    }
+
+    private static void check(boolean condition, String name) {
+        if (!condition) throw new AssertionError(name);
+    }
+}
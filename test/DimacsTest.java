@@ -0,0 +1,66 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Checks of the clause file reader and writers. Run with java DimacsTest; it throws AssertionError on the
+ * first failure.
+ */
+public class DimacsTest {
+
+    public static void main(String[] args) throws IOException {
+        roundTripThroughSmallWindows();
+        System.out.println("DimacsTest passed");
+    }
+
+    /*
+     * Both formats read back the same clauses and symbols when every few bytes start a new mapped
+     * window, the way files above 2 GB are read.
+     */
+    private static void roundTripThroughSmallWindows() throws IOException {
+        Cnf cnf = new FrontEnd().encode(puzzle());
+        File dimacs = File.createTempFile("dimacs", ".cnf");
+        File lines = File.createTempFile("dimacs", "_Clauses");
+        try {
+            Dimacs.write(cnf, dimacs.getPath());
+            Dimacs.writeLines(cnf, lines.getPath());
+            for (long windowSize : new long[]{61, 4096}) {
+                Cnf read = new Cnf();
+                try (Dimacs.Input buf = new Dimacs.Input(dimacs.getPath(), windowSize)) {
+                    Dimacs.parse(buf, read, read);
+                }
+                check(cnf, read, "DIMACS, window " + windowSize);
+                read = new Cnf();
+                try (Dimacs.Input buf = new Dimacs.Input(lines.getPath(), windowSize)) {
+                    long symbolsStart = Dimacs.parseLines(buf, read);
+                    Dimacs.parseSymbols(buf, symbolsStart, read);
+                }
+                check(cnf, read, "front end format, window " + windowSize);
+            }
+        } finally {
+            dimacs.delete();
+            lines.delete();
+        }
+    }
+
+    private static String puzzle() throws IOException {
+        File file = File.createTempFile("triangle", "");
+        file.deleteOnExit();
+        Boards.write(Boards.triangle(5, 1), file.getPath());
+        return file.getPath();
+    }
+
+    private static void check(Cnf expected, Cnf actual, String name) {
+        if (expected.getNumClauses() != actual.getNumClauses()) {
+            throw new AssertionError(name + ": " + actual.getNumClauses() + " clauses, expected " + expected.getNumClauses());
+        }
+        int last = expected.getNumClauses() - 1;
+        int[] a = expected.getLiterals();
+        int[] b = actual.getLiterals();
+        for (int k = 0; k < expected.clauseEnd(last); k++) {
+            if (a[k] != b[k] || expected.clauseEnd(last) != actual.clauseEnd(last)) throw new AssertionError(name + ": literal " + k + " differs");
+        }
+        List<String> symbols = expected.getSymbols();
+        if (!symbols.equals(actual.getSymbols())) throw new AssertionError(name + ": symbols differ");
+    }
+}
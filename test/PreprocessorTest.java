@@ -0,0 +1,72 @@
+import java.util.Random;
+
+/**
+ * Checks of the preprocessor's model reconstruction. Run with java PreprocessorTest; it throws
+ * AssertionError on the first failure.
+ */
+public class PreprocessorTest {
+
+    public static void main(String[] args) {
+        representativeFixedBeforeSubstitution();
+        randomFormulas(20000, 1);
+        System.out.println("PreprocessorTest passed");
+    }
+
+    /*
+     * 3 and 2 are equivalent, and 2 is fixed false before 3 would be replaced by it.
+     */
+    private static void representativeFixedBeforeSubstitution() {
+        Cnf cnf = new Cnf();
+        cnf.addClause(2, -3);
+        cnf.addClause(1, 3);
+        cnf.addClause(-3, -2);
+        cnf.addClause(1, -2);
+        cnf.addClause(-1, -2);
+        check(cnf, "representative fixed before substitution");
+    }
+
+    /*
+     * Small random 2- and 3-clause formulas, where the simplifications interact the most.
+     */
+    private static void randomFormulas(int count, long seed) {
+        Random random = new Random(seed);
+        for (int n = 0; n < count; n++) {
+            int numVars = 3 + random.nextInt(6);
+            int numClauses = 2 + random.nextInt(4 * numVars);
+            Cnf cnf = new Cnf();
+            for (int i = 0; i < numClauses; i++) {
+                int[] clause = new int[1 + random.nextInt(3)];
+                for (int k = 0; k < clause.length; k++) {
+                    clause[k] = (1 + random.nextInt(numVars)) * (random.nextBoolean() ? 1 : -1);
+                }
+                cnf.addClause(clause);
+            }
+            check(cnf, "random formula " + n);
+        }
+    }
+
+    /*
+     * The simplified formula is satisfiable exactly when the input is, and the extended model satisfies
+     * every clause of the input.
+     */
+    private static void check(Cnf cnf, String name) {
+        DPLL plain = new DPLL();
+        plain.addClauses(cnf);
+        boolean expected = plain.solve();
+        Preprocessor preprocessor = new Preprocessor(cnf);
+        DPLL solver = new DPLL();
+        solver.addClauses(preprocessor.simplify());
+        boolean satisfied = solver.solve();
+        if (satisfied != expected) throw new AssertionError(name + ": satisfiable " + satisfied + ", expected " + expected);
+        if (!satisfied) return;
+        preprocessor.extendModel(solver);
+        int[] literals = cnf.getLiterals();
+        for (int i = 0; i < cnf.getNumClauses(); i++) {
+            boolean clauseSatisfied = false;
+            for (int k = cnf.clauseStart(i); k < cnf.clauseEnd(i); k++) {
+                clauseSatisfied |= solver.modelValue(Math.abs(literals[k])) == (literals[k] > 0 ? 1 : 0);
+            }
+            if (!clauseSatisfied) throw new AssertionError(name + ": clause " + i + " violated by the extended model");
+        }
+    }
+}